@@ -1,168 +1,934 @@
-package org.example;
-
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.*;
-
-class BPlusTreeNode {
-    boolean isLeaf;
-    List<Integer> keys;
-    List<BPlusTreeNode> children;
-    List<String[]> values;
-    BPlusTreeNode next;
-
-    public BPlusTreeNode(boolean isLeaf) {
-        this.isLeaf = isLeaf;
-        this.keys = new ArrayList<>();
-        this.children = new ArrayList<>();
-        this.values = new ArrayList<>();
-        this.next = null;
-    }
-}
-
-class BPlusTree {
-    private BPlusTreeNode root;
-    private final int order;
-
-    public BPlusTree(int order) {
-        if (order < 3) throw new IllegalArgumentException("Order must be at least 3");
-        this.root = new BPlusTreeNode(true);
-        this.order = order;
-    }
-
-    private BPlusTreeNode findLeaf(int key) {
-        BPlusTreeNode node = root;
-        while (!node.isLeaf) {
-            int i = 0;
-            while (i < node.keys.size() && key >= node.keys.get(i)) i++;
-            node = node.children.get(i);
-        }
-        return node;
-    }
-
-    public void insert(int key, String[] data) {
-        BPlusTreeNode leaf = findLeaf(key);
-        int pos = Collections.binarySearch(leaf.keys, key);
-        if (pos < 0) pos = -(pos + 1);
-        leaf.keys.add(pos, key);
-        leaf.values.add(pos, data);
-
-        if (leaf.keys.size() > order - 1) {
-            splitLeaf(leaf);
-        }
-    }
-
-    private void splitLeaf(BPlusTreeNode leaf) {
-        int mid = (order + 1) / 2;
-        BPlusTreeNode newLeaf = new BPlusTreeNode(true);
-        newLeaf.keys.addAll(leaf.keys.subList(mid, leaf.keys.size()));
-        newLeaf.values.addAll(leaf.values.subList(mid, leaf.values.size()));
-        leaf.keys.subList(mid, leaf.keys.size()).clear();
-        leaf.values.subList(mid, leaf.values.size()).clear();
-
-        newLeaf.next = leaf.next;
-        leaf.next = newLeaf;
-
-        if (leaf == root) {
-            BPlusTreeNode newRoot = new BPlusTreeNode(false);
-            newRoot.keys.add(newLeaf.keys.get(0));
-            newRoot.children.add(leaf);
-            newRoot.children.add(newLeaf);
-            root = newRoot;
-        } else {
-            insertIntoParent(leaf, newLeaf, newLeaf.keys.get(0));
-        }
-    }
-
-    private void insertIntoParent(BPlusTreeNode left, BPlusTreeNode right, int key) {
-        BPlusTreeNode parent = findParent(root, left);
-        if (parent == null) throw new RuntimeException("Parent not found");
-
-        int pos = Collections.binarySearch(parent.keys, key);
-        if (pos < 0) pos = -(pos + 1);
-        parent.keys.add(pos, key);
-        parent.children.add(pos + 1, right);
-
-        if (parent.keys.size() > order - 1) {
-            splitInternal(parent);
-        }
-    }
-
-    private void splitInternal(BPlusTreeNode node) {
-        int mid = (order + 1) / 2;
-        BPlusTreeNode newInternal = new BPlusTreeNode(false);
-
-        newInternal.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
-        newInternal.children.addAll(node.children.subList(mid + 1, node.children.size()));
-
-        int midKey = node.keys.get(mid);
-
-        node.keys.subList(mid, node.keys.size()).clear();
-        node.children.subList(mid + 1, node.children.size()).clear();
-
-        if (node == root) {
-            BPlusTreeNode newRoot = new BPlusTreeNode(false);
-            newRoot.keys.add(midKey);
-            newRoot.children.add(node);
-            newRoot.children.add(newInternal);
-            root = newRoot;
-        } else {
-            insertIntoParent(node, newInternal, midKey);
-        }
-    }
-
-    private BPlusTreeNode findParent(BPlusTreeNode current, BPlusTreeNode target) {
-        if (current.isLeaf || current.children.isEmpty()) return null;
-        for (int i = 0; i < current.children.size(); i++) {
-            BPlusTreeNode child = current.children.get(i);
-            if (child == target) return current;
-            BPlusTreeNode result = findParent(child, target);
-            if (result != null) return result;
-        }
-        return null;
-    }
-
-    public String[] search(String keyStr) {
-            int key = Integer.parseInt(keyStr);
-            BPlusTreeNode node = findLeaf(key);
-            int pos = Collections.binarySearch(node.keys, key);
-            return pos >= 0 ? node.values.get(pos) : null;
-    }
-
-    public boolean search(int key) {
-        BPlusTreeNode node = findLeaf(key);
-        int pos = Collections.binarySearch(node.keys, key);
-        return pos >= 0;
-    }
-
-    public void writeTreeStructureToFile(String filename) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            Queue<BPlusTreeNode> queue = new LinkedList<>();
-            queue.add(root);
-            int level = 0;
-
-            writer.write("--- B+ Tree Structure ---");
-            while (!queue.isEmpty()) {
-                int size = queue.size();
-                writer.write("\nLevel " + level + ": ");
-                for (int i = 0; i < size; i++) {
-                    BPlusTreeNode node = queue.poll();
-                    writer.write("[");
-                    for (int j = 0; j < node.keys.size(); j++) {
-                        writer.write(String.valueOf(node.keys.get(j)));
-                        if (j < node.keys.size() - 1) writer.write(", ");
-                    }
-                    writer.write("] ");
-                    if (!node.isLeaf) {
-                        queue.addAll(node.children);
-                    }
-                }
-                writer.write("");
-                        level++;
-            }
-
-                    writer.write("-------------------------");
-        }
-    }
-}
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// A concurrent tree lets any number of threads search and scan while others insert. Readers take
+// no latches: they note each node's version, read it and validate the version afterwards, starting
+// over from the root if a writer got in between. Writers latch top-down and let go of everything
+// above a node that has room for one more key (one to spare, for a delete), since a split or merge
+// can't propagate past it.
+//
+// Every node but the root keeps at least (order - 1) / 2 keys: a delete that takes a node below
+// that borrows from a sibling or merges with it.
+//
+// With a RecordStore the records are kept off-heap and leaves only hold a reference to each one;
+// a record is decoded when a lookup returns it.
+class BPlusTree implements VaersIndex {
+    private volatile BPlusTreeNode root;
+    private final int order;
+    private final boolean concurrent;
+    private final ReentrantLock rootLock;  // held by a writer while the root may still change
+    private final ReentrantReadWriteLock compactionLock;  // shared by writers, exclusive for compact()
+    private final RecordStore store;
+    private final int minKeys;
+    private final LongAdder leafSplits = new LongAdder();
+    private final LongAdder internalSplits = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private static final long NOT_STORED = -1;
+
+    public BPlusTree(int order) {
+        this(order, false);
+    }
+
+    public BPlusTree(int order, boolean concurrent) {
+        this(order, concurrent, null);
+    }
+
+    public BPlusTree(int order, boolean concurrent, RecordStore store) {
+        if (order < 3) throw new IllegalArgumentException("Order must be at least 3");
+        this.order = order;
+        this.concurrent = concurrent;
+        this.rootLock = concurrent ? new ReentrantLock() : null;
+        this.compactionLock = concurrent ? new ReentrantReadWriteLock() : null;
+        this.store = store;
+        this.minKeys = (order - 1) / 2;
+        this.root = newNode(true);
+    }
+
+    private BPlusTreeNode newNode(boolean isLeaf) {
+        return new BPlusTreeNode(isLeaf, order, concurrent, store != null);
+    }
+
+    // Record at pos in leaf
+    String[] valueAt(BPlusTreeNode leaf, int pos) {
+        return store == null ? leaf.values[pos] : store.get(leaf.refs[pos]);
+    }
+
+    private void setValue(BPlusTreeNode leaf, int pos, String[] data, long ref) {
+        if (store == null) {
+            leaf.values[pos] = data;
+        } else {
+            leaf.refs[pos] = ref;
+        }
+    }
+
+    int getOrder() {
+        return order;
+    }
+
+    BPlusTreeNode getRoot() {
+        return root;
+    }
+
+    // Levels from the root to the leaves; all leaves are at the same depth
+    public int getHeight() {
+        int height = 1;
+        for (BPlusTreeNode node = root; !node.isLeaf; node = node.children[0]) height++;
+        return height;
+    }
+
+    // Shape of the tree from one level-by-level walk over the nodes, plus the counters. On a
+    // concurrent tree the walk takes no latches, so with writers running it is approximate.
+    public TreeStats stats() {
+        List<Integer> nodesPerLevel = new ArrayList<>();
+        int[] fillHistogram = new int[10];
+        long keys = 0, nodeBytes = 0;
+        List<BPlusTreeNode> level = List.of(root);
+        while (!level.isEmpty()) {
+            nodesPerLevel.add(level.size());
+            List<BPlusTreeNode> below = new ArrayList<>();
+            for (BPlusTreeNode node : level) {
+                nodeBytes += nodeBytes(node);
+                if (node.isLeaf) {
+                    keys += node.keyCount;
+                    fillHistogram[Math.min(9, 10 * node.keyCount / (order - 1))]++;
+                } else {
+                    below.addAll(Arrays.asList(node.children).subList(0, node.keyCount + 1));
+                }
+            }
+            level = below;
+        }
+        return new TreeStats(order, nodesPerLevel.stream().mapToInt(Integer::intValue).toArray(), fillHistogram, keys,
+                nodeBytes, store != null ? store.bytesUsed() : 0, leafSplits.sum(), internalSplits.sum(), merges.sum(), lookups.sum());
+    }
+
+    // Object and array sizes of one node on a 64-bit JVM with compressed references:
+    // a 12 byte object header, 16 byte array headers and 4 byte references, rounded up to 8 bytes
+    private long nodeBytes(BPlusTreeNode node) {
+        long bytes = align(12 + 1 + 2 * 4 + 7 * 4) + align(16 + (node.keys != null ? 4L : 2L) * order);
+        if (node.children != null) bytes += align(16 + 4L * (order + 1));
+        if (node.values != null) bytes += align(16 + 4L * order);
+        if (node.refs != null) bytes += align(16 + 8L * order);
+        if (node.latch != null) bytes += 32;
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private BPlusTreeNode findLeaf(int key) {
+        return findLeaf(key, null);
+    }
+
+    // Descends to the leaf for key; when path is given, the internal nodes passed on the way are
+    // pushed onto it (root first) so a split can reach its parent without searching the tree
+    private BPlusTreeNode findLeaf(int key, List<BPlusTreeNode> path) {
+        BPlusTreeNode node = root;
+        while (!node.isLeaf) {
+            if (path != null) path.add(node);
+            node = node.children[node.childIndex(key)];
+        }
+        return node;
+    }
+
+    // Optimistic descent for concurrent trees. Returns the leaf for key with its version in
+    // state[0] and the lowest key of the next leaf (Long.MAX_VALUE if none) in state[1], or null
+    // if a writer changed a node on the way down and the caller has to retry.
+    private BPlusTreeNode findLeafOptimistic(int key, long[] state) {
+        BPlusTreeNode node = root;
+        long version = node.latch.tryOptimisticRead();
+        if (version == 0 || node != root) return null;
+        long fence = Long.MAX_VALUE;
+        while (!node.isLeaf) {
+            int i = node.childIndex(key);
+            if (i < node.keyCount) fence = node.key(i);
+            BPlusTreeNode child = node.children[i];
+            if (child == null || !node.latch.validate(version)) return null;
+            long childVersion = child.latch.tryOptimisticRead();
+            // Re-check the parent after reading the child's version, so a split of the child
+            // that finished in between is noticed through the parent it updated
+            if (childVersion == 0 || !node.latch.validate(version)) return null;
+            node = child;
+            version = childVersion;
+        }
+        state[0] = version;
+        state[1] = fence;
+        return node;
+    }
+
+    private String[] searchOptimistic(int key) {
+        long[] state = new long[2];
+        while (true) {
+            BPlusTreeNode leaf = findLeafOptimistic(key, state);
+            if (leaf != null) {
+                int pos = leaf.indexOf(key);
+                String[] value = pos >= 0 && store == null ? leaf.values[pos] : null;
+                long ref = pos >= 0 && store != null ? leaf.refs[pos] : 0;
+                if (leaf.latch.validate(state[0])) return pos < 0 || store == null ? value : store.get(ref);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public void insert(int key, String[] data) {
+        // Encode the record before descending, so a concurrent insert does it outside any latch
+        long ref = store != null ? store.append(data) : 0;
+        if (concurrent) {
+            insertLatched(key, false, () -> data, ref);
+            return;
+        }
+        List<BPlusTreeNode> path = new ArrayList<>();
+        BPlusTreeNode leaf = findLeaf(key, path);
+        insertIntoLeaf(leaf, key, data, ref, path);
+    }
+
+    // Inserts key unless it is already in the tree, with a single descent. The record is only
+    // built (and stored) once the key is known to be new. Returns whether it was inserted.
+    public boolean insertIfAbsent(int key, Supplier<String[]> data) {
+        if (concurrent) return insertLatched(key, true, data, NOT_STORED);
+        List<BPlusTreeNode> path = new ArrayList<>();
+        BPlusTreeNode leaf = findLeaf(key, path);
+        if (leaf.indexOf(key) >= 0) return false;
+        String[] record = data.get();
+        insertIntoLeaf(leaf, key, record, store != null ? store.append(record) : 0, path);
+        return true;
+    }
+
+    // Merges keys sorted in ascending order into the tree, skipping the ones already present;
+    // data builds the record for keys[i] and is only called for new keys. Consecutive keys that
+    // fall into the same leaf are handled without descending from the root again, so merging a
+    // sorted delta costs about one descent per leaf touched. Returns the number of keys inserted.
+    public int insertAllIfAbsent(int[] keys, IntFunction<String[]> data) {
+        int inserted = 0;
+        if (concurrent) {
+            // Another writer may split the leaf between two keys, so each key descends on its own
+            for (int i = 0; i < keys.length; i++) {
+                int row = i;
+                if (insertIfAbsent(keys[i], () -> data.apply(row))) inserted++;
+            }
+            return inserted;
+        }
+        List<BPlusTreeNode> path = new ArrayList<>();
+        int i = 0;
+        while (i < keys.length) {
+            path.clear();
+            BPlusTreeNode leaf = findLeaf(keys[i], path);
+            long fence = upperFence(path, keys[i]);
+            while (true) {
+                int key = keys[i];
+                if (i > 0 && key < keys[i - 1]) throw new IllegalArgumentException("Keys must be sorted: " + key + " after " + keys[i - 1]);
+                // A split consumes the path and moves keys out of this leaf, so look up the next key afresh
+                boolean splits = false;
+                if (leaf.indexOf(key) < 0) {
+                    splits = leaf.keyCount == order - 1;
+                    String[] record = data.apply(i);
+                    insertIntoLeaf(leaf, key, record, store != null ? store.append(record) : 0, path);
+                    inserted++;
+                }
+                i++;
+                if (splits || i == keys.length || keys[i] >= fence) break;
+            }
+        }
+        return inserted;
+    }
+
+    // Lowest key that belongs to a leaf after the one reached through path, or Long.MAX_VALUE
+    private long upperFence(List<BPlusTreeNode> path, int key) {
+        for (int level = path.size() - 1; level >= 0; level--) {
+            BPlusTreeNode node = path.get(level);
+            int i = node.childIndex(key);
+            if (i < node.keyCount) return node.key(i);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void insertIntoLeaf(BPlusTreeNode leaf, int key, String[] data, long ref, List<BPlusTreeNode> path) {
+        int pos = leaf.indexOf(key);
+        if (pos < 0) pos = -(pos + 1);
+        leaf.insertEntry(pos, key);
+        setValue(leaf, pos, data, ref);
+
+        if (leaf.keyCount > order - 1) {
+            splitLeaf(leaf, path);
+        }
+    }
+
+    // Nodes still latched when the leaf is reached are exactly the ones a split can touch,
+    // so they double as the descent path for splitLeaf/insertIntoParent. A record that was not
+    // stored up front (ref is NOT_STORED) is stored under the leaf latch once it is known to be new.
+    private boolean insertLatched(int key, boolean onlyIfAbsent, Supplier<String[]> data, long ref) {
+        WriteLatches latches = latchPath(key, node -> node.keyCount < order - 1);
+        try {
+            BPlusTreeNode leaf = latches.leaf();
+            if (onlyIfAbsent && leaf.indexOf(key) >= 0) return false;
+            String[] record = data.get();
+            if (ref == NOT_STORED && store != null) ref = store.append(record);
+            insertIntoLeaf(leaf, key, record, ref, latches.path());
+            return true;
+        } finally {
+            latches.release();
+        }
+    }
+
+    // Write-latches the way down to key's leaf, letting go of the nodes above (and the root lock)
+    // whenever the node just latched is safe, meaning the change can't propagate above it
+    private WriteLatches latchPath(int key, Predicate<BPlusTreeNode> safe) {
+        WriteLatches latches = new WriteLatches();
+        compactionLock.readLock().lock();
+        rootLock.lock();
+        latches.holdsRoot = true;
+        BPlusTreeNode node = root;
+        latches.latch(node);
+        while (true) {
+            if (safe.test(node)) latches.releaseAbove();
+            if (node.isLeaf) return latches;
+            node = node.children[node.childIndex(key)];
+            latches.latch(node);
+        }
+    }
+
+    // Latches held by one writer: the nodes from the highest one its change can reach down to the
+    // leaf, then any siblings a rebalance latched on the way back up
+    private final class WriteLatches {
+        private final List<BPlusTreeNode> nodes = new ArrayList<>();
+        private boolean holdsRoot;
+
+        void latch(BPlusTreeNode node) {
+            node.latch.asWriteLock().lock();
+            nodes.add(node);
+        }
+
+        BPlusTreeNode leaf() {
+            return nodes.get(nodes.size() - 1);
+        }
+
+        // The latched ancestors of the leaf, root side first
+        List<BPlusTreeNode> path() {
+            return new ArrayList<>(nodes.subList(0, nodes.size() - 1));
+        }
+
+        void releaseAbove() {
+            for (int i = 0; i < nodes.size() - 1; i++) nodes.get(i).latch.asWriteLock().unlock();
+            nodes.subList(0, nodes.size() - 1).clear();
+            if (holdsRoot) {
+                rootLock.unlock();
+                holdsRoot = false;
+            }
+        }
+
+        void release() {
+            for (BPlusTreeNode node : nodes) node.latch.asWriteLock().unlock();
+            nodes.clear();
+            if (holdsRoot) rootLock.unlock();
+            holdsRoot = false;
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    // Replaces the record stored under key. Returns false, changing nothing, if key is not in the tree.
+    public boolean update(int key, String[] data) {
+        long ref = store != null ? store.append(data) : 0;
+        if (!concurrent) {
+            BPlusTreeNode leaf = findLeaf(key);
+            int pos = leaf.indexOf(key);
+            if (pos < 0) return false;
+            setValue(leaf, pos, data, ref);
+            return true;
+        }
+        // Only the leaf changes, so every node is safe and just the leaf stays latched
+        WriteLatches latches = latchPath(key, node -> true);
+        try {
+            BPlusTreeNode leaf = latches.leaf();
+            int pos = leaf.indexOf(key);
+            if (pos < 0) return false;
+            setValue(leaf, pos, data, ref);
+            return true;
+        } finally {
+            latches.release();
+        }
+    }
+
+    // Removes key and its record, rebalancing on the way back up. Returns whether key was there.
+    // With a RecordStore the record's bytes stay in the store until it is closed.
+    public boolean delete(int key) {
+        if (!concurrent) {
+            List<BPlusTreeNode> path = new ArrayList<>();
+            BPlusTreeNode leaf = findLeaf(key, path);
+            int pos = leaf.indexOf(key);
+            if (pos < 0) return false;
+            leaf.removeEntry(pos);
+            rebalance(leaf, key, path, null);
+            return true;
+        }
+        // A node with a key to spare absorbs the delete; the root only changes when it is down to one key
+        WriteLatches latches = latchPath(key, node -> node == root ? node.isLeaf || node.keyCount > 1 : node.keyCount > minKeys);
+        try {
+            BPlusTreeNode leaf = latches.leaf();
+            int pos = leaf.indexOf(key);
+            if (pos < 0) return false;
+            leaf.removeEntry(pos);
+            rebalance(leaf, key, latches.path(), latches);
+            return true;
+        } finally {
+            latches.release();
+        }
+    }
+
+    // Brings node, reached through path while descending for key, back to minimum occupancy by
+    // borrowing an entry from a sibling that can spare one, or else by merging it with a sibling
+    // and carrying on with the parent. An empty internal root is replaced by its only child.
+    // On a concurrent tree the siblings are latched into latches before they are touched.
+    private void rebalance(BPlusTreeNode node, int key, List<BPlusTreeNode> path, WriteLatches latches) {
+        if (node == root) {
+            if (!node.isLeaf && node.keyCount == 0) root = node.children[0];
+            return;
+        }
+        if (node.keyCount >= minKeys) return;
+
+        BPlusTreeNode parent = path.remove(path.size() - 1);
+        int i = parent.childIndex(key);
+        BPlusTreeNode left = i > 0 ? sibling(parent, i - 1, latches) : null;
+        if (left != null && left.keyCount > minKeys) {
+            borrowFromLeft(parent, i, left, node);
+            return;
+        }
+        BPlusTreeNode right = i < parent.keyCount ? sibling(parent, i + 1, latches) : null;
+        if (right != null && right.keyCount > minKeys) {
+            borrowFromRight(parent, i, node, right);
+            return;
+        }
+        if (left != null) {
+            merge(parent, i - 1, left, node);
+        } else {
+            merge(parent, i, node, right);
+        }
+        rebalance(parent, key, path, latches);
+    }
+
+    private BPlusTreeNode sibling(BPlusTreeNode parent, int i, WriteLatches latches) {
+        BPlusTreeNode node = parent.children[i];
+        if (latches != null) latches.latch(node);
+        return node;
+    }
+
+    // Moves the last entry of left, child i - 1 of parent, to the front of node (child i)
+    private void borrowFromLeft(BPlusTreeNode parent, int i, BPlusTreeNode left, BPlusTreeNode node) {
+        int last = left.keyCount - 1;
+        if (node.isLeaf) {
+            node.insertEntry(0, left.key(last));
+            left.copyEntries(last, node, 0, 1);
+            left.clearEntries(last, last + 1);
+            left.keyCount--;
+            parent.setKey(i - 1, node.key(0));
+        } else {
+            node.copyKeys(0, node, 1, node.keyCount);
+            System.arraycopy(node.children, 0, node.children, 1, node.keyCount + 1);
+            node.setKey(0, parent.key(i - 1));
+            node.children[0] = left.children[last + 1];
+            node.keyCount++;
+            parent.setKey(i - 1, left.key(last));
+            left.children[last + 1] = null;
+            left.keyCount--;
+        }
+    }
+
+    // Moves the first entry of right, child i + 1 of parent, to the end of node (child i)
+    private void borrowFromRight(BPlusTreeNode parent, int i, BPlusTreeNode node, BPlusTreeNode right) {
+        if (node.isLeaf) {
+            right.copyEntries(0, node, node.keyCount, 1);
+            node.keyCount++;
+            right.removeEntry(0);
+            parent.setKey(i, right.key(0));
+        } else {
+            node.setKey(node.keyCount, parent.key(i));
+            node.children[node.keyCount + 1] = right.children[0];
+            node.keyCount++;
+            parent.setKey(i, right.key(0));
+            right.copyKeys(1, right, 0, right.keyCount - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.keyCount);
+            right.children[right.keyCount] = null;
+            right.keyCount--;
+        }
+    }
+
+    // Appends right to left, its neighbour at separator sep in parent, and drops right from parent
+    private void merge(BPlusTreeNode parent, int sep, BPlusTreeNode left, BPlusTreeNode right) {
+        merges.increment();
+        if (left.isLeaf) {
+            right.copyEntries(0, left, left.keyCount, right.keyCount);
+            left.keyCount += right.keyCount;
+            left.next = right.next;
+        } else {
+            left.setKey(left.keyCount, parent.key(sep));
+            right.copyKeys(0, left, left.keyCount + 1, right.keyCount);
+            System.arraycopy(right.children, 0, left.children, left.keyCount + 1, right.keyCount + 1);
+            left.keyCount += right.keyCount + 1;
+        }
+        left.compressKeys();
+        parent.removeChild(sep);
+    }
+
+    // Rebuilds the tree from its own leaf chain at fillFactor, as bulkLoad would, to win back the
+    // space and height that a long run of deletes and inserts leaves behind. Records are carried
+    // over as they are, without being copied or re-encoded. On a concurrent tree readers carry on
+    // against the old nodes meanwhile, and writers wait until the new root is in place.
+    public void compact(double fillFactor) {
+        if (concurrent) compactionLock.writeLock().lock();
+        try {
+            BPlusTreeNode leaf = root;
+            while (!leaf.isLeaf) leaf = leaf.children[0];
+            BulkBuilder builder = new BulkBuilder(fillFactor);
+            for (; leaf != null; leaf = leaf.next) {
+                for (int i = 0; i < leaf.keyCount; i++) {
+                    BPlusTreeNode target = builder.add(leaf.key(i));
+                    if (target != null) leaf.copyEntries(i, target, target.keyCount - 1, 1);
+                }
+            }
+            root = builder.finish();
+        } finally {
+            if (concurrent) compactionLock.writeLock().unlock();
+        }
+    }
+
+    // Builds the tree bottom-up from entries sorted by key instead of inserting them one at a time.
+    // Leaves hold fillFactor * (order - 1) keys and internal nodes fillFactor * order children, so a
+    // full load does no splits and leaves are not left half full. Duplicate keys keep the first entry.
+    // On a concurrent tree this must finish before the tree is shared with other threads.
+    public void bulkLoad(Iterator<Map.Entry<Integer, String[]>> sortedEntries, double fillFactor) {
+        requireEmpty();
+        BulkBuilder builder = new BulkBuilder(fillFactor);
+        while (sortedEntries.hasNext()) {
+            Map.Entry<Integer, String[]> entry = sortedEntries.next();
+            BPlusTreeNode leaf = builder.add(entry.getKey());
+            if (leaf != null) {
+                String[] data = entry.getValue();
+                setValue(leaf, leaf.keyCount - 1, data, store != null ? store.append(data) : 0);
+            }
+        }
+        root = builder.finish();
+    }
+
+    // Same as bulkLoad, for records that were already appended to this tree's RecordStore
+    public void bulkLoadStored(Iterator<Map.Entry<Integer, Long>> sortedRefs, double fillFactor) {
+        if (store == null) throw new IllegalStateException("Tree has no record store");
+        requireEmpty();
+        BulkBuilder builder = new BulkBuilder(fillFactor);
+        while (sortedRefs.hasNext()) {
+            Map.Entry<Integer, Long> entry = sortedRefs.next();
+            BPlusTreeNode leaf = builder.add(entry.getKey());
+            if (leaf != null) leaf.refs[leaf.keyCount - 1] = entry.getValue();
+        }
+        root = builder.finish();
+    }
+
+    private void requireEmpty() {
+        if (!root.isLeaf || root.keyCount > 0) throw new IllegalStateException("Bulk load requires an empty tree");
+    }
+
+    // Packs sorted keys into linked leaves, then builds the internal levels above them
+    private final class BulkBuilder {
+        private final int leafCapacity;
+        private final int fanout;
+        private final List<BPlusTreeNode> leaves = new ArrayList<>();
+        private BPlusTreeNode leaf;
+        private boolean first = true;
+        private int lastKey;
+
+        BulkBuilder(double fillFactor) {
+            if (fillFactor <= 0 || fillFactor > 1) throw new IllegalArgumentException("Fill factor must be in (0, 1]");
+            leafCapacity = Math.max(1, (int) Math.round((order - 1) * fillFactor));
+            fanout = Math.max(2, (int) Math.round(order * fillFactor));
+            leaf = newNode(true);
+            leaves.add(leaf);
+        }
+
+        // Adds key to the current leaf and returns that leaf, whose record slot is then
+        // keyCount - 1, or returns null when key repeats the previous one
+        BPlusTreeNode add(int key) {
+            if (!first && key <= lastKey) {
+                if (key == lastKey) return null;
+                throw new IllegalArgumentException("Entries must be sorted by key: " + key + " after " + lastKey);
+            }
+            if (leaf.keyCount == leafCapacity) {
+                BPlusTreeNode newLeaf = newNode(true);
+                leaf.next = newLeaf;
+                leaf = newLeaf;
+                leaves.add(leaf);
+            }
+            leaf.setKey(leaf.keyCount++, key);
+            lastKey = key;
+            first = false;
+            return leaf;
+        }
+
+        // Groups the nodes of each level under parents until a single root is left
+        BPlusTreeNode finish() {
+            balanceLastLeaves(leaves);
+            List<BPlusTreeNode> level = leaves;
+            List<Integer> minKeys = new ArrayList<>();
+            for (BPlusTreeNode node : level) {
+                minKeys.add(node.keyCount == 0 ? 0 : node.key(0));
+                node.compressKeys();
+            }
+            while (level.size() > 1) {
+                List<BPlusTreeNode> parents = new ArrayList<>();
+                List<Integer> parentMinKeys = new ArrayList<>();
+                int start = 0;
+                for (int size : groupSizes(level.size(), fanout)) {
+                    BPlusTreeNode parent = newNode(false);
+                    for (int i = start; i < start + size; i++) {
+                        if (i > start) parent.setKey(parent.keyCount++, minKeys.get(i));
+                        parent.children[i - start] = level.get(i);
+                    }
+                    parent.compressKeys();
+                    parents.add(parent);
+                    parentMinKeys.add(minKeys.get(start));
+                    start += size;
+                }
+                level = parents;
+                minKeys = parentMinKeys;
+            }
+            return level.get(0);
+        }
+    }
+
+    // Keeps the last leaf above minimum occupancy by merging it into, or sharing keys with, its left neighbour
+    private void balanceLastLeaves(List<BPlusTreeNode> leaves) {
+        int n = leaves.size();
+        if (n < 2) return;
+        BPlusTreeNode prev = leaves.get(n - 2);
+        BPlusTreeNode last = leaves.get(n - 1);
+        if (last.keyCount >= minKeys) return;
+
+        int total = prev.keyCount + last.keyCount;
+        if (total <= order - 1) {
+            last.copyEntries(0, prev, prev.keyCount, last.keyCount);
+            prev.keyCount = total;
+            prev.next = last.next;
+            leaves.remove(n - 1);
+        } else {
+            int keep = total - total / 2;
+            int moved = prev.keyCount - keep;
+            last.copyEntries(0, last, moved, last.keyCount);
+            prev.copyEntries(keep, last, 0, moved);
+            prev.clearEntries(keep, prev.keyCount);
+            prev.keyCount = keep;
+            last.keyCount += moved;
+        }
+    }
+
+    // Number of children for each parent on the next level up; the last two groups are evened out
+    // so that no internal node ends up with fewer than half of order children
+    private List<Integer> groupSizes(int count, int fanout) {
+        List<Integer> sizes = new ArrayList<>();
+        for (int remaining = count; remaining > 0; remaining -= fanout) {
+            sizes.add(Math.min(fanout, remaining));
+        }
+        int last = sizes.size() - 1;
+        if (last > 0 && sizes.get(last) < (order + 1) / 2) {
+            int total = sizes.get(last - 1) + sizes.remove(last);
+            if (total <= order) {
+                sizes.set(last - 1, total);
+            } else {
+                sizes.set(last - 1, total - total / 2);
+                sizes.add(total / 2);
+            }
+        }
+        return sizes;
+    }
+
+    private void splitLeaf(BPlusTreeNode leaf, List<BPlusTreeNode> path) {
+        leafSplits.increment();
+        int mid = (order + 1) / 2;
+        BPlusTreeNode newLeaf = newNode(true);
+        newLeaf.keyCount = leaf.keyCount - mid;
+        leaf.copyEntries(mid, newLeaf, 0, newLeaf.keyCount);
+        leaf.clearEntries(mid, leaf.keyCount);
+        leaf.keyCount = mid;
+
+        newLeaf.next = leaf.next;
+        leaf.next = newLeaf;
+        leaf.compressKeys();
+        newLeaf.compressKeys();
+
+        if (leaf == root) {
+            BPlusTreeNode newRoot = newNode(false);
+            newRoot.setKey(0, newLeaf.key(0));
+            newRoot.keyCount = 1;
+            newRoot.children[0] = leaf;
+            newRoot.children[1] = newLeaf;
+            root = newRoot;
+        } else {
+            insertIntoParent(newLeaf, newLeaf.key(0), path);
+        }
+    }
+
+    private void insertIntoParent(BPlusTreeNode right, int key, List<BPlusTreeNode> path) {
+        if (path.isEmpty()) throw new RuntimeException("Parent not found");
+        BPlusTreeNode parent = path.remove(path.size() - 1);
+
+        int pos = parent.indexOf(key);
+        if (pos < 0) pos = -(pos + 1);
+        parent.insertChild(pos, key, right);
+
+        if (parent.keyCount > order - 1) {
+            splitInternal(parent, path);
+        }
+    }
+
+    // The middle key moves up; rounding it down leaves both halves with at least minKeys keys
+    private void splitInternal(BPlusTreeNode node, List<BPlusTreeNode> path) {
+        internalSplits.increment();
+        int mid = order / 2;
+        BPlusTreeNode newInternal = newNode(false);
+
+        newInternal.keyCount = node.keyCount - mid - 1;
+        node.copyKeys(mid + 1, newInternal, 0, newInternal.keyCount);
+        System.arraycopy(node.children, mid + 1, newInternal.children, 0, newInternal.keyCount + 1);
+
+        int midKey = node.key(mid);
+
+        Arrays.fill(node.children, mid + 1, node.keyCount + 1, null);
+        node.keyCount = mid;
+        node.compressKeys();
+        newInternal.compressKeys();
+
+        if (node == root) {
+            BPlusTreeNode newRoot = newNode(false);
+            newRoot.setKey(0, midKey);
+            newRoot.keyCount = 1;
+            newRoot.children[0] = node;
+            newRoot.children[1] = newInternal;
+            root = newRoot;
+        } else {
+            insertIntoParent(newInternal, midKey, path);
+        }
+    }
+
+    @Override
+    public String[] search(String keyStr) {
+            int key = Integer.parseInt(keyStr);
+            lookups.increment();
+            if (concurrent) return searchOptimistic(key);
+            BPlusTreeNode node = findLeaf(key);
+            int pos = node.indexOf(key);
+            return pos >= 0 ? valueAt(node, pos) : null;
+    }
+
+    @Override
+    public boolean search(int key) {
+        lookups.increment();
+        if (concurrent) return searchOptimistic(key) != null;
+        BPlusTreeNode node = findLeaf(key);
+        return node.indexOf(key) >= 0;
+    }
+
+    // Looks the keys up in ascending order, so each one descends only from the deepest node on the
+    // previous key's path whose range still covers it; keys in the same leaf share one descent.
+    @Override
+    public String[][] searchMany(int[] keys) {
+        // Key in the high half, caller's position in the low half, so sorting keeps both together
+        long[] sorted = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) sorted[i] = ((long) keys[i] << 32) | i;
+        Arrays.sort(sorted);
+        String[][] results = new String[keys.length][];
+        lookups.add(keys.length);
+        if (concurrent) {
+            searchManyOptimistic(sorted, results);
+            return results;
+        }
+
+        int height = getHeight();
+        BPlusTreeNode[] path = new BPlusTreeNode[height];
+        long[] fences = new long[height];  // lowest key past each node on the path
+        path[0] = root;
+        fences[0] = Long.MAX_VALUE;
+        int depth = 0;
+        for (long entry : sorted) {
+            int key = (int) (entry >> 32);
+            while (key >= fences[depth]) depth--;
+            while (!path[depth].isLeaf) {
+                BPlusTreeNode node = path[depth];
+                int i = node.childIndex(key);
+                fences[depth + 1] = i < node.keyCount ? node.key(i) : fences[depth];
+                path[++depth] = node.children[i];
+            }
+            int pos = path[depth].indexOf(key);
+            results[(int) entry] = pos >= 0 ? valueAt(path[depth], pos) : null;
+        }
+        return results;
+    }
+
+    // Reads every key that falls into the same leaf under one validated version, then descends
+    // again for the first key past the leaf. Stored records are only decoded once validated.
+    private void searchManyOptimistic(long[] sorted, String[][] results) {
+        long[] refs = store != null ? new long[sorted.length] : null;
+        long[] state = new long[2];
+        int next = 0;
+        while (next < sorted.length) {
+            BPlusTreeNode leaf = findLeafOptimistic((int) (sorted[next] >> 32), state);
+            if (leaf == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int end = next;
+            for (; end < sorted.length && (sorted[end] >> 32) < state[1]; end++) {
+                int pos = leaf.indexOf((int) (sorted[end] >> 32));
+                int row = (int) sorted[end];
+                if (store == null) results[row] = pos >= 0 ? leaf.values[pos] : null;
+                else refs[row] = pos >= 0 ? leaf.refs[pos] : NOT_STORED;
+            }
+            if (!leaf.latch.validate(state[0])) continue;
+            if (store != null) {
+                for (int i = next; i < end; i++) {
+                    int row = (int) sorted[i];
+                    results[row] = refs[row] == NOT_STORED ? null : store.get(refs[row]);
+                }
+            }
+            next = end;
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, String[]>> entries(int lo, int hi) {
+        if (concurrent) return entriesOptimistic(lo, hi);
+        BPlusTreeNode start = findLeaf(lo);
+        int startPos = start.indexOf(lo);
+        int first = startPos >= 0 ? startPos : -(startPos + 1);
+        return new Iterator<>() {
+            private BPlusTreeNode leaf = start;
+            private int pos = first;
+
+            @Override
+            public boolean hasNext() {
+                while (leaf != null && pos >= leaf.keyCount) {
+                    leaf = leaf.next;
+                    pos = 0;
+                }
+                return leaf != null && leaf.key(pos) <= hi;
+            }
+
+            @Override
+            public Map.Entry<Integer, String[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int key = leaf.key(pos);
+                return Map.entry(key, valueAt(leaf, pos++));
+            }
+        };
+    }
+
+    // Store references of the entries with lo <= key <= hi, for trees whose store holds something
+    // other than String[] records (see SecondaryIndex)
+    long[] refsInRange(int lo, int hi) {
+        if (store == null) throw new IllegalStateException("Tree has no record store");
+        if (concurrent) throw new IllegalStateException("Not supported on a concurrent tree");
+        long[] refs = new long[16];
+        int count = 0;
+        BPlusTreeNode leaf = findLeaf(lo);
+        int pos = leaf.indexOf(lo);
+        if (pos < 0) pos = -(pos + 1);
+        for (; leaf != null; leaf = leaf.next, pos = 0) {
+            for (; pos < leaf.keyCount; pos++) {
+                if (leaf.key(pos) > hi) return Arrays.copyOf(refs, count);
+                if (count == refs.length) refs = Arrays.copyOf(refs, count * 2);
+                refs[count++] = leaf.refs[pos];
+            }
+        }
+        return Arrays.copyOf(refs, count);
+    }
+
+    // Copies one leaf's worth of matches at a time under a validated version, then looks up the
+    // next leaf from the root by its lowest key, so no latch is held between calls to next()
+    private Iterator<Map.Entry<Integer, String[]>> entriesOptimistic(int lo, int hi) {
+        return new Iterator<>() {
+            private final int[] keyBuffer = new int[order];
+            private final String[][] buffer = new String[order][];
+            private final long[] refBuffer = store != null ? new long[order] : null;
+            private final long[] state = new long[2];
+            private int size, pos;
+            private long cursor = lo;
+
+            @Override
+            public boolean hasNext() {
+                while (pos == size && cursor <= hi) {
+                    fill();
+                }
+                return pos < size;
+            }
+
+            @Override
+            public Map.Entry<Integer, String[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int key = keyBuffer[pos];
+                if (store != null) return Map.entry(key, store.get(refBuffer[pos++]));
+                String[] value = buffer[pos];
+                buffer[pos++] = null;
+                return Map.entry(key, value);
+            }
+
+            private void fill() {
+                while (true) {
+                    BPlusTreeNode leaf = findLeafOptimistic((int) cursor, state);
+                    if (leaf != null) {
+                        int i = leaf.indexOf((int) cursor);
+                        if (i < 0) i = -(i + 1);
+                        int count = 0;
+                        for (; i < leaf.keyCount && leaf.key(i) <= hi; i++, count++) {
+                            keyBuffer[count] = leaf.key(i);
+                            if (store == null) buffer[count] = leaf.values[i];
+                            else refBuffer[count] = leaf.refs[i];
+                        }
+                        if (leaf.latch.validate(state[0])) {
+                            size = count;
+                            pos = 0;
+                            cursor = state[1];
+                            return;
+                        }
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+        };
+    }
+
+    public void writeTreeStructureToFile(String filename) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+            Queue<BPlusTreeNode> queue = new LinkedList<>();
+            queue.add(root);
+            int level = 0;
+
+            writer.write("--- B+ Tree Structure ---");
+            while (!queue.isEmpty()) {
+                int size = queue.size();
+                writer.write("\nLevel " + level + ": ");
+                for (int i = 0; i < size; i++) {
+                    BPlusTreeNode node = queue.poll();
+                    writer.write("[");
+                    for (int j = 0; j < node.keyCount; j++) {
+                        writer.write(String.valueOf(node.key(j)));
+                        if (j < node.keyCount - 1) writer.write(", ");
+                    }
+                    writer.write("] ");
+                    if (!node.isLeaf) {
+                        queue.addAll(Arrays.asList(node.children).subList(0, node.keyCount + 1));
+                    }
+                }
+                writer.write("");
+                        level++;
+            }
+
+                    writer.write("-------------------------");
+        }
+    }
+}
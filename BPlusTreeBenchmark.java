@@ -0,0 +1,825 @@
+package org.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Standalone timing runs for BPlusTree, in the same spirit as the timers printed by project2().
+// Run with a large heap, e.g. java -Xmx8g org.example.BPlusTreeBenchmark. The correctness checks
+// are in BPlusTreeChecks.
+public class BPlusTreeBenchmark {
+    private static final int ORDER = 1000;
+    static final int FIRST_VAERS_ID = 902418;  // first COVID-19 report in the dataset
+    private static final int COVID_RECORDS = 1_615_925;  // size of the merged VAERS_COVID_* files
+    private static final String[] PAYLOAD = {"VAERS_ID", "RECVDATE", "STATE", "AGE_YRS", "SEX"};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static volatile long sink;  // results are added here so the JIT can't drop the work that made them
+
+    // With arguments, only the named runs, e.g. java org.example.BPlusTreeBenchmark orderSweep
+    public static void main(String[] args) throws Exception {
+        Set<String> only = Set.of(args);
+        if (selected(only, "loadScaling")) loadScaling();
+        if (selected(only, "heapAndLookups")) heapAndLookups();
+        if (selected(only, "recordStoreHeap")) recordStoreHeap();
+        if (selected(only, "correctionCycles")) correctionCycles();
+        if (selected(only, "batchedLookups")) batchedLookups();
+        if (selected(only, "compressedKeys")) compressedKeys();
+        if (selected(only, "bufferPool")) bufferPool();
+        if (selected(only, "orderSweep")) orderSweep();
+        if (selected(only, "lookupServer")) lookupServer();
+        if (selected(only, "csvReader")) csvReader();
+        if (selected(only, "columnarFile")) columnarFile();
+        if (selected(only, "symptomTable")) symptomTable();
+    }
+
+    private static boolean selected(Set<String> only, String name) {
+        return only.isEmpty() || only.contains(name);
+    }
+
+    // Insert time per record must stay flat as the tree grows: a split only walks back up its
+    // descent path, so each insert costs O(height) no matter how many nodes the tree has
+    private static void loadScaling() {
+        int[] sizes = {100_000, 1_000_000, 10_000_000};
+        System.out.println("=== Insert time per record (order " + ORDER + ") ===");
+        for (int size : sizes) {
+            int[] keys = vaersIds(size);
+            System.out.printf("%,d records, ascending: %.1f ns/record%n", size, nsPerInsert(keys));
+            shuffle(keys, new Random(size));
+            System.out.printf("%,d records, shuffled:  %.1f ns/record%n", size, nsPerInsert(keys));
+        }
+    }
+
+    // Heap held by the tree itself (the payload array is shared, so only nodes are counted)
+    // and the average latency of a random point lookup, at the size of the COVID dataset
+    private static void heapAndLookups() {
+        int[] keys = vaersIds(COVID_RECORDS);
+        long before = usedHeap();
+        BPlusTree tree = new BPlusTree(ORDER);
+        for (int key : keys) {
+            tree.insert(key, PAYLOAD);
+        }
+        long treeBytes = usedHeap() - before;
+
+        int[] probes = keys.clone();
+        shuffle(probes, new Random(42));
+        int found = 0;
+        for (int round = 0; round < 3; round++) {  // the first rounds warm up the JIT
+            found = 0;
+            long start = System.nanoTime();
+            for (int key : probes) {
+                if (tree.search(key)) found++;
+            }
+            if (round == 2) {
+                System.out.println("=== " + COVID_RECORDS + " records (order " + ORDER + ") ===");
+                System.out.printf("Tree heap: %.1f MB%n", treeBytes / (1024.0 * 1024.0));
+                System.out.printf("Point lookup: %.1f ns/op (%d found)%n", (System.nanoTime() - start) / (double) probes.length, found);
+            }
+        }
+    }
+
+    // Heap held by a tree of full VAERS-shaped rows, with the rows as String[] in the leaves and
+    // with the rows encoded in a RecordStore
+    private static void recordStoreHeap() {
+        int records = 300_000;
+        System.out.println("=== " + records + " VAERS-shaped rows: heap held by the tree ===");
+        for (boolean offHeap : new boolean[]{false, true}) {
+            long before = usedHeap();
+            try (RecordStore store = offHeap ? new RecordStore() : null) {
+                BPlusTree tree = new BPlusTree(ORDER, false, store);
+                Random random = new Random(7);
+                for (int i = 0; i < records; i++) {
+                    tree.insert(FIRST_VAERS_ID + i, vaersRow(FIRST_VAERS_ID + i, random));
+                }
+                long treeBytes = usedHeap() - before;
+                System.out.printf("%s: %.1f MB heap%s%n", offHeap ? "RecordStore" : "String[] leaves",
+                        treeBytes / (1024.0 * 1024.0),
+                        offHeap ? String.format(" + %.1f MB off-heap", store.bytesUsed() / (1024.0 * 1024.0)) : "");
+                if (tree.search(String.valueOf(FIRST_VAERS_ID + records / 2)) == null) throw new IllegalStateException("Lookup failed");
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Repeated correction cycles like the weekly VAERS republication: each one withdraws 5% of the
+    // reports, corrects another 5% and adds 5% new ones. Rebalancing keeps height and node heap
+    // steady while it runs, and a compaction at the end brings the leaves back to the load fill factor.
+    private static void correctionCycles() {
+        int cycles = 10;
+        int churn = COVID_RECORDS / 20;
+        BPlusTree tree = new BPlusTree(ORDER);
+        List<Map.Entry<Integer, String[]>> entries = new ArrayList<>();
+        for (int key : vaersIds(COVID_RECORDS)) entries.add(Map.entry(key, PAYLOAD));
+        tree.bulkLoad(entries.iterator(), 1.0);
+        entries = null;
+
+        List<Integer> live = new ArrayList<>();
+        for (int key : vaersIds(COVID_RECORDS)) live.add(key);
+        int nextId = FIRST_VAERS_ID + COVID_RECORDS;
+        Random random = new Random(9);
+        System.out.println("=== " + cycles + " correction cycles of " + churn + " deletes, updates and inserts ===");
+        printShape("Loaded", tree);
+        for (int cycle = 1; cycle <= cycles; cycle++) {
+            long start = System.nanoTime();
+            Collections.shuffle(live, random);
+            for (int i = 0; i < churn; i++) {
+                if (!tree.delete(live.get(i))) throw new IllegalStateException("Delete failed for " + live.get(i));
+                if (!tree.update(live.get(churn + i), PAYLOAD)) throw new IllegalStateException("Update failed for " + live.get(churn + i));
+                tree.insert(nextId, PAYLOAD);
+                live.set(i, nextId++);
+            }
+            if (cycle == 1 || cycle == cycles) {
+                printShape(String.format("Cycle %d (%.0f ns/op)", cycle, (System.nanoTime() - start) / (3.0 * churn)), tree);
+            }
+        }
+        tree.compact(1.0);
+        printShape("Compacted", tree);
+    }
+
+    // A review list of random VAERS_IDs (a tenth of them unknown) looked up with a search(String)
+    // per ID, as the downstream jobs do, and with one searchMany call
+    private static void batchedLookups() {
+        BPlusTree tree = new BPlusTree(ORDER);
+        List<Map.Entry<Integer, String[]>> entries = new ArrayList<>();
+        for (int key : vaersIds(COVID_RECORDS)) entries.add(Map.entry(key, PAYLOAD));
+        tree.bulkLoad(entries.iterator(), 1.0);
+
+        System.out.println("=== Batched lookups over " + COVID_RECORDS + " records ===");
+        Random random = new Random(11);
+        for (int batch : new int[]{1_000, 10_000, 100_000}) {
+            int[] ids = new int[batch];
+            for (int i = 0; i < batch; i++) ids[i] = FIRST_VAERS_ID + random.nextInt(COVID_RECORDS + COVID_RECORDS / 10);
+            double loopNs = 0, batchNs = 0;
+            for (int round = 0; round < 5; round++) {  // the first rounds warm up the JIT
+                long start = System.nanoTime();
+                int found = 0;
+                for (int id : ids) {
+                    if (tree.search(String.valueOf(id)) != null) found++;
+                }
+                loopNs = (System.nanoTime() - start) / (double) batch;
+
+                start = System.nanoTime();
+                String[][] records = tree.searchMany(ids);
+                batchNs = (System.nanoTime() - start) / (double) batch;
+                for (String[] record : records) {
+                    if (record != null) found--;
+                }
+                if (found != 0) throw new IllegalStateException("searchMany and search disagree");
+            }
+            System.out.printf("%,d IDs: %.1f ns/key per-key loop, %.1f ns/key searchMany%n", batch, loopNs, batchNs);
+        }
+    }
+
+    // Dense VAERS_IDs let every leaf hold its keys as 16-bit offsets; IDs spaced 100 apart span
+    // more than 65535 per leaf and keep the int[] keys, so the two trees differ only in key width
+    private static void compressedKeys() {
+        System.out.println("=== Leaf key width (" + COVID_RECORDS + " records, order " + ORDER + ") ===");
+        for (int spacing : new int[]{1, 100}) {
+            BPlusTree tree = new BPlusTree(ORDER);
+            List<Map.Entry<Integer, String[]>> entries = new ArrayList<>();
+            for (int i = 0; i < COVID_RECORDS; i++) entries.add(Map.entry(FIRST_VAERS_ID + i * spacing, PAYLOAD));
+            tree.bulkLoad(entries.iterator(), 1.0);
+
+            int[] probes = new int[COVID_RECORDS];
+            for (int i = 0; i < probes.length; i++) probes[i] = FIRST_VAERS_ID + i * spacing;
+            shuffle(probes, new Random(7));
+            double ns = 0;
+            for (int round = 0; round < 3; round++) {  // the first rounds warm up the JIT
+                long start = System.nanoTime();
+                int found = 0;
+                for (int key : probes) {
+                    if (tree.search(key)) found++;
+                }
+                ns = (System.nanoTime() - start) / (double) probes.length;
+                if (found != probes.length) throw new IllegalStateException("Lost keys: " + (probes.length - found));
+            }
+            printShape("IDs " + spacing + " apart", tree);
+            System.out.printf("Point lookup: %.1f ns/op%n", ns);
+        }
+    }
+
+    // A paged tree of VAERS-shaped rows written by BPlusTreeFile.write, then searched through
+    // buffer pools of several sizes. After the lookups a full scan reads every leaf and record once;
+    // with hits alone setting the CLOCK bits, the internal pages stay cached and the lookups that
+    // follow keep their hit rate.
+    private static void bufferPool() throws IOException {
+        Path file = Files.createTempFile("vaers", ".bpt");
+        try {
+            Random random = new Random(5);
+            List<Map.Entry<Integer, String[]>> entries = new ArrayList<>(COVID_RECORDS);
+            for (int key : vaersIds(COVID_RECORDS)) entries.add(Map.entry(key, vaersRow(key, random)));
+            BPlusTree loaded = new BPlusTree(ORDER);
+            loaded.bulkLoad(entries.iterator(), 1.0);
+            entries = null;
+            long start = System.nanoTime();
+            BPlusTreeFile.write(loaded, file);
+            loaded = null;
+            System.out.println("=== Paged tree of " + COVID_RECORDS + " rows (" + Files.size(file) / (1024 * 1024) + " MB file) ===");
+            System.out.printf("Written in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            int[] probes = new int[200_000];
+            for (int i = 0; i < probes.length; i++) probes[i] = FIRST_VAERS_ID + random.nextInt(COVID_RECORDS);
+            for (long budget : new long[]{1L << 20, 16L << 20, 256L << 20}) {
+                try (BPlusTreeFile tree = BPlusTreeFile.open(file, budget)) {
+                    BufferPool pool = tree.getBufferPool();
+                    double ns = 0;
+                    for (int round = 0; round < 2; round++) {  // the first round warms up the JIT and the pool
+                        long lookupStart = System.nanoTime();
+                        for (int key : probes) tree.search(String.valueOf(key));
+                        ns = (System.nanoTime() - lookupStart) / (double) probes.length;
+                    }
+                    long hits = pool.getHits(), misses = pool.getMisses();
+                    for (Iterator<Map.Entry<Integer, String[]>> it = tree.entries(Integer.MIN_VALUE, Integer.MAX_VALUE); it.hasNext(); ) it.next();
+                    long scanHits = pool.getHits(), scanMisses = pool.getMisses();
+                    for (int key : probes) tree.search(String.valueOf(key));
+                    System.out.printf("%,d KB pool: lookup %.0f ns/op, hit rate %.1f%% before a full scan, %.1f%% after%n",
+                            budget >> 10, ns, hitRate(hits, misses, 0, 0), hitRate(pool.getHits(), pool.getMisses(), scanHits, scanMisses));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double hitRate(long hits, long misses, long hitsBefore, long missesBefore) {
+        return 100.0 * (hits - hitsBefore) / (hits - hitsBefore + misses - missesBefore);
+    }
+
+    // Every workload at every order and size, to choose the order from and to compare against after
+    // a change. Each cell is warmed up, then measured MEASURED_ITERATIONS times and printed as mean
+    // and standard deviation, so a difference smaller than the deviation is noise. Keys have the
+    // gaps of the real COVID VAERS_IDs and records are full VAERS-shaped rows.
+    private static void orderSweep() {
+        int[] orders = {16, 64, 256, 1000, 4096};
+        int[] sizes = {100_000, 1_000_000, COVID_RECORDS};
+        Random random = new Random(17);
+        String[][] rows = new String[1024][];
+        for (int i = 0; i < rows.length; i++) rows[i] = vaersRow(FIRST_VAERS_ID + i, random);
+
+        System.out.println("=== Order sweep (ns/op, mean +/- sd of " + MEASURED_ITERATIONS + " runs) ===");
+        System.out.printf("%6s %10s  %-20s %-20s %-20s %-20s %-20s%n", "order", "records",
+                "sequential insert", "shuffled insert", "point search", "range scan (100)", "mixed 90/10");
+        for (int size : sizes) {
+            int[] keys = covidIds(size, new Random(size));
+            int[] shuffled = keys.clone();
+            shuffle(shuffled, new Random(size + 1));
+            int[] probes = Arrays.copyOf(shuffled, Math.min(size, 200_000));
+
+            for (int order : orders) {
+                String sequential = measure(() -> {
+                    BPlusTree tree = new BPlusTree(order);
+                    long start = System.nanoTime();
+                    for (int key : keys) tree.insert(key, rows[key & 1023]);
+                    return (System.nanoTime() - start) / (double) keys.length;
+                });
+                String shuffledInsert = measure(() -> {
+                    BPlusTree tree = new BPlusTree(order);
+                    long start = System.nanoTime();
+                    for (int key : shuffled) tree.insert(key, rows[key & 1023]);
+                    return (System.nanoTime() - start) / (double) shuffled.length;
+                });
+
+                List<Map.Entry<Integer, String[]>> entries = new ArrayList<>(keys.length);
+                for (int key : keys) entries.add(Map.entry(key, rows[key & 1023]));
+                BPlusTree tree = new BPlusTree(order);
+                tree.bulkLoad(entries.iterator(), 1.0);
+                entries = null;
+
+                String search = measure(() -> {
+                    long found = 0;
+                    long start = System.nanoTime();
+                    for (int key : probes) {
+                        if (tree.search(key)) found++;
+                    }
+                    sink += found;
+                    return (System.nanoTime() - start) / (double) probes.length;
+                });
+                String range = measure(() -> {
+                    long records = 0;
+                    int scans = 20_000;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < scans; i++) {
+                        int lo = probes[i % probes.length];
+                        for (Iterator<String[]> it = tree.range(lo, lo + 99); it.hasNext(); records++) it.next();
+                    }
+                    sink += records;
+                    return (System.nanoTime() - start) / (double) scans;
+                });
+                // Nine lookups per insert of a new report, whose VAERS_ID is past every existing one
+                int[] nextId = {keys[keys.length - 1]};
+                String mixed = measure(() -> {
+                    long found = 0;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < probes.length; i++) {
+                        if (i % 10 == 9) {
+                            int key = ++nextId[0];
+                            tree.insert(key, rows[key & 1023]);
+                        } else if (tree.search(probes[i])) {
+                            found++;
+                        }
+                    }
+                    sink += found;
+                    return (System.nanoTime() - start) / (double) probes.length;
+                });
+                System.out.printf("%6d %10d  %-20s %-20s %-20s %-20s %-20s%n", order, size, sequential, shuffledInsert, search, range, mixed);
+            }
+        }
+    }
+
+    // Load generator for LookupServer: each client sends point lookups for random VAERS_IDs over
+    // its own keep-alive connection, one request at a time, for a fixed time. Throughput counts
+    // every response; latency is from sending a request to reading the last byte of its response.
+    private static void lookupServer() throws Exception {
+        Random random = new Random(23);
+        String[][] rows = new String[1024][];
+        for (int i = 0; i < rows.length; i++) rows[i] = vaersRow(FIRST_VAERS_ID + i, random);
+        List<Map.Entry<Integer, String[]>> entries = new ArrayList<>(COVID_RECORDS);
+        for (int key : vaersIds(COVID_RECORDS)) entries.add(Map.entry(key, rows[key & 1023]));
+        BPlusTree tree = new BPlusTree(ORDER);
+        tree.bulkLoad(entries.iterator(), 1.0);
+        entries = null;
+
+        System.out.println("=== Lookup server over " + COVID_RECORDS + " records ===");
+        try (LookupServer server = new LookupServer(tree, 0)) {
+            for (int clients : new int[]{10, 100, 1_000, 2_000}) {
+                ExecutorService executor = LookupServer.newPerTaskExecutor(clients);
+                long warmupEnd = System.nanoTime() + 2_000_000_000L;
+                long end = warmupEnd + 5_000_000_000L;
+                List<Future<long[]>> results = new ArrayList<>();
+                for (int c = 0; c < clients; c++) {
+                    long seed = c;
+                    results.add(executor.submit(() -> {
+                        Random ids = new Random(seed);
+                        long[] latencies = new long[1024];
+                        int count = 0;
+                        try (LookupClient client = new LookupClient(server.getPort())) {
+                            while (true) {
+                                long start = System.nanoTime();
+                                if (start >= end) break;
+                                int status = client.get("/vaers/" + (FIRST_VAERS_ID + ids.nextInt(COVID_RECORDS)));
+                                long done = System.nanoTime();
+                                if (status != 200) throw new IllegalStateException("HTTP " + status);
+                                if (start < warmupEnd) continue;
+                                if (count == latencies.length) latencies = Arrays.copyOf(latencies, 2 * count);
+                                latencies[count++] = done - start;
+                            }
+                        }
+                        return Arrays.copyOf(latencies, count);
+                    }));
+                }
+                long[] all = new long[0];
+                for (Future<long[]> result : results) {
+                    long[] latencies = result.get();
+                    int offset = all.length;
+                    all = Arrays.copyOf(all, offset + latencies.length);
+                    System.arraycopy(latencies, 0, all, offset, latencies.length);
+                }
+                executor.shutdown();
+                Arrays.sort(all);
+                System.out.printf("%,d clients: %,.0f requests/s, p50 %.2f ms, p99 %.2f ms%n", clients, all.length / 5.0,
+                        all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6);
+            }
+        }
+    }
+
+    // Bare HTTP/1.1 GETs over one keep-alive connection, so the load generator measures the server
+    // rather than the overhead of a client library
+    private static final class LookupClient implements Closeable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        LookupClient(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+        }
+
+        // Sends a GET for path, reads the whole response and returns its status
+        int get(String path) throws IOException {
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String statusLine = readLine();
+            int contentLength = 0;
+            for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+            in.skipNBytes(contentLength);
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int c = in.read(); c != '\n'; c = in.read()) {
+                if (c < 0) throw new EOFException("Connection closed by the server");
+                if (c != '\r') line.append((char) c);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // CsvReader against Commons CSV on the yearly files in src/dataset (run from the project
+    // directory), or on a generated VAERSDATA-shaped file if there are none. "All fields" makes a
+    // String of every field, as the index load does; "VAERS_ID only" parses one int column per row
+    // and skips the rest, as the Task 1 join does for the rows it doesn't keep.
+    private static void csvReader() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Path dataset = Path.of("src/dataset");
+        if (Files.isDirectory(dataset)) {
+            try (DirectoryStream<Path> yearly = Files.newDirectoryStream(dataset, "*VAERS*.csv")) {
+                yearly.forEach(files::add);
+            }
+        }
+        Path generated = null;
+        if (files.isEmpty()) {
+            generated = Files.createTempFile("VAERSDATA", ".csv");
+            writeVaersData(generated, 200_000);
+            files.add(generated);
+        }
+        Collections.sort(files);
+        try {
+            System.out.println("=== CSV parsing, ns/record (mean +/- sd of " + MEASURED_ITERATIONS + " runs) ===");
+            for (Path file : files) {
+                long rows = countRows(file);
+                if (rows == 0) continue;
+                System.out.printf("%s: %,d rows, %.1f MB%n", file.getFileName(), rows, Files.size(file) / (1024.0 * 1024.0));
+                System.out.println("  all fields,    Commons CSV: " + measure(() -> commonsPass(file, false) / (double) rows));
+                System.out.println("  all fields,    CsvReader:   " + measure(() -> csvReaderPass(file, false) / (double) rows));
+                System.out.println("  VAERS_ID only, Commons CSV: " + measure(() -> commonsPass(file, true) / (double) rows));
+                System.out.println("  VAERS_ID only, CsvReader:   " + measure(() -> csvReaderPass(file, true) / (double) rows));
+            }
+        } finally {
+            if (generated != null) Files.deleteIfExists(generated);
+        }
+    }
+
+    private static long countRows(Path file) throws IOException {
+        long rows = 0;
+        try (CsvReader csv = new CsvReader(file)) {
+            while (csv.next()) rows++;
+        }
+        return rows;
+    }
+
+    // Nanoseconds to read file with Commons CSV
+    private static long commonsPass(Path file, boolean idOnly) {
+        long start = System.nanoTime();
+        long sum = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset());
+             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            for (CSVRecord record : parser) {
+                if (idOnly) {
+                    sum += Integer.parseInt(record.get("VAERS_ID").trim());
+                } else {
+                    for (String value : record) sum += value.length();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    // Nanoseconds to read file with CsvReader
+    private static long csvReaderPass(Path file, boolean idOnly) {
+        long start = System.nanoTime();
+        long sum = 0;
+        try (CsvReader csv = new CsvReader(file)) {
+            int id = csv.requireColumn("VAERS_ID");
+            while (csv.next()) {
+                if (idOnly) {
+                    sum += csv.getInt(id);
+                } else {
+                    for (String value : csv.toArray()) sum += value.length();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    // Reading a VAERS_COVID table as CSV (Commons CSV, CsvReader) against its columnar file, for the
+    // 13 columns project3 reads and for every column, as the index load reads them. Uses
+    // src/output/VAERS_COVID_*.csv (run from the project directory), or a generated table.
+    private static void columnarFile() throws IOException {
+        List<Path> tables = new ArrayList<>();
+        Path output = Path.of("src/output");
+        if (Files.isDirectory(output)) {
+            try (DirectoryStream<Path> yearly = Files.newDirectoryStream(output, "VAERS_COVID_*.csv")) {
+                for (Path table : yearly) {
+                    if (!table.getFileName().toString().contains("manifest")) tables.add(table);
+                }
+            }
+        }
+        Path generated = null;
+        if (tables.isEmpty()) {
+            generated = Files.createTempFile("VAERS_COVID", ".csv");
+            writeVaersCovid(generated, 300_000);
+            tables.add(generated);
+        }
+        Collections.sort(tables);
+        String[] projected = {"VAERS_ID", "VAX_MANU", "RECVDATE", "AGE_YRS", "SEX", "DIED", "DATEDIED", "VAX_DATE",
+                "SYMPTOM1", "SYMPTOM2", "SYMPTOM3", "SYMPTOM4", "SYMPTOM5"};
+        System.out.println("=== Reading VAERS_COVID tables, ns/row (mean +/- sd of " + MEASURED_ITERATIONS + " runs) ===");
+        for (Path table : tables) {
+            Path columnar = Files.createTempFile("VAERS_COVID", ColumnarFile.EXTENSION);
+            try {
+                long start = System.nanoTime();
+                ColumnarFile.convert(table, columnar);
+                int rows;
+                try (ColumnarFile file = ColumnarFile.open(columnar)) {
+                    rows = file.getRowCount();
+                }
+                if (rows == 0) continue;
+                System.out.printf("%s: %,d rows, %.1f MB as CSV, %.1f MB columnar (converted in %d ms)%n", table.getFileName(), rows,
+                        Files.size(table) / (1024.0 * 1024.0), Files.size(columnar) / (1024.0 * 1024.0), (System.nanoTime() - start) / 1_000_000);
+                for (String[] columns : new String[][]{projected, null}) {
+                    String label = columns == null ? "all columns" : columns.length + " columns";
+                    System.out.println("  " + label + ", Commons CSV: " + measure(() -> commonsColumns(table, columns) / (double) rows));
+                    System.out.println("  " + label + ", CsvReader:   " + measure(() -> csvReaderColumns(table, columns) / (double) rows));
+                    System.out.println("  " + label + ", columnar:    " + measure(() -> columnarColumns(columnar, columns) / (double) rows));
+                }
+            } finally {
+                deleteScratch(columnar);
+            }
+        }
+        if (generated != null) Files.deleteIfExists(generated);
+    }
+
+    // Deletes a file that was memory-mapped, or leaves it to deleteOnExit where the OS (Windows)
+    // refuses while a mapping of it is not yet collected
+    private static void deleteScratch(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    // Nanoseconds to read the named columns of every row (all of them if columns is null) as Strings
+    private static long commonsColumns(Path table, String[] columns) {
+        long start = System.nanoTime();
+        long sum = 0;
+        try (BufferedReader reader = Files.newBufferedReader(table, Charset.defaultCharset());
+             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            for (CSVRecord record : parser) {
+                if (columns == null) {
+                    for (String value : record) sum += value.length();
+                } else {
+                    for (String column : columns) sum += record.get(column).length();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    private static long csvReaderColumns(Path table, String[] columns) {
+        long start = System.nanoTime();
+        long sum = 0;
+        try (CsvReader csv = new CsvReader(table)) {
+            int[] indexes = new int[columns == null ? csv.getHeaderNames().size() : columns.length];
+            for (int i = 0; i < indexes.length; i++) indexes[i] = columns == null ? i : csv.requireColumn(columns[i]);
+            while (csv.next()) {
+                for (int index : indexes) sum += csv.get(index).length();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    private static long columnarColumns(Path columnar, String[] columns) {
+        long start = System.nanoTime();
+        long sum = 0;
+        try (ColumnarFile file = ColumnarFile.open(columnar)) {
+            ColumnarFile.Column[] read = new ColumnarFile.Column[columns == null ? file.getColumnNames().size() : columns.length];
+            for (int i = 0; i < read.length; i++) read[i] = columns == null ? file.column(i) : file.column(columns[i]);
+            for (int row = 0; row < file.getRowCount(); row++) {
+                for (ColumnarFile.Column column : read) sum += column.get(row).length();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sink += sum;
+        return System.nanoTime() - start;
+    }
+
+    // The Task 2/3 symptom rows, as String[] rows with a fresh String per field (as parsed back from
+    // SYMPTOMDATA.csv) against a SymptomTable: heap held, and a Task 3 pass that sorts by SEX and
+    // counts the distinct VAERS_IDs that died per value
+    private static void symptomTable() {
+        int reports = 200_000;
+        String[] names = {"VAERS_ID", "AGE_YRS", "SEX", "VAX_NAME", "RPT_DATE", "SYMPTOM", "DIED", "DATEDIED", "SYMPTOM_TEXT"};
+        Random random = new Random(24);
+        List<String[]> symptomRows = new ArrayList<>();
+        long before = usedHeap();
+        for (int i = 0; i < reports; i++) {
+            String[] report = vaersRow(FIRST_VAERS_ID + i, random);
+            String died = random.nextInt(50) == 0 ? "Y" : "";
+            for (int j = 35; j < 45; j += 2) {
+                String[] row = {report[0], report[3], report[6], report[49], report[1], report[j], died, "", report[8]};
+                for (int k = 0; k < row.length; k++) row[k] = new String(row[k].toCharArray());
+                symptomRows.add(row);
+            }
+        }
+        long rowBytes = usedHeap() - before;
+        String[][] rows = symptomRows.toArray(new String[0][]);
+        symptomRows = null;
+
+        before = usedHeap();
+        SymptomTable table = new SymptomTable(names, new boolean[]{true, false, false, false, false, false, false, false, true});
+        for (String[] row : rows) {
+            String[] copy = new String[row.length];
+            for (int k = 0; k < row.length; k++) copy[k] = new String(row[k].toCharArray());
+            table.add(copy);
+        }
+        table.sortKeys(0);
+        long tableBytes = usedHeap() - before;
+
+        System.out.printf("=== Task 2/3 symptom rows: %,d reports, %,d rows ===%n", reports, rows.length);
+        System.out.printf("  heap, String[] rows:  %.1f MB%n", rowBytes / (1024.0 * 1024.0));
+        System.out.printf("  heap, SymptomTable:   %.1f MB%n", tableBytes / (1024.0 * 1024.0));
+        System.out.println("  sort and group, ns/row (mean +/- sd of " + MEASURED_ITERATIONS + " runs)");
+        System.out.println("    String[] rows:  " + measure(() -> groupRows(rows, 2) / (double) rows.length));
+        System.out.println("    SymptomTable:   " + measure(() -> groupTable(table, 2) / (double) rows.length));
+    }
+
+    private static long groupRows(String[][] rows, int column) {
+        String[][] sorted = rows.clone();
+        long start = System.nanoTime();
+        Arrays.sort(sorted, (a, b) -> a[column].compareTo(b[column]));
+        Map<String, Set<String>> deaths = new LinkedHashMap<>();
+        for (String[] row : sorted) {
+            if (row[6].equalsIgnoreCase("Y")) deaths.computeIfAbsent(row[column], k -> new HashSet<>()).add(row[0]);
+        }
+        for (Set<String> ids : deaths.values()) sink += ids.size();
+        return System.nanoTime() - start;
+    }
+
+    private static long groupTable(SymptomTable table, int column) {
+        int[] keys = table.sortKeys(column);
+        long[] sorted = new long[table.size()];
+        long start = System.nanoTime();
+        for (int row = 0; row < sorted.length; row++) sorted[row] = (long) keys[row] << 32 | row;
+        Arrays.sort(sorted);
+        int[] ids = table.sortKeys(0);
+        int[] died = table.sortKeys(6);
+        boolean[] diedYes = table.matching(6, value -> value.equalsIgnoreCase("Y"));
+        Map<Integer, BitSet> deaths = new LinkedHashMap<>();
+        for (long entry : sorted) {
+            int row = (int) entry;
+            if (diedYes[died[row]]) deaths.computeIfAbsent(keys[row], k -> new BitSet()).set(ids[row]);
+        }
+        for (BitSet set : deaths.values()) sink += set.cardinality();
+        return System.nanoTime() - start;
+    }
+
+    // Rows as Task 1 writes them: the VAERSDATA columns, then the symptom and vaccine columns
+    private static void writeVaersCovid(Path file, int rows) throws IOException {
+        String[] header = {"VAERS_ID", "RECVDATE", "STATE", "AGE_YRS", "CAGE_YR", "CAGE_MO", "SEX", "RPT_DATE", "SYMPTOM_TEXT",
+                "DIED", "DATEDIED", "L_THREAT", "ER_VISIT", "HOSPITAL", "HOSPDAYS", "X_STAY", "DISABLE", "RECOVD", "VAX_DATE",
+                "ONSET_DATE", "NUMDAYS", "LAB_DATA", "V_ADMINBY", "V_FUNDBY", "OTHER_MEDS", "CUR_ILL", "HISTORY", "PRIOR_VAX",
+                "SPLTTYPE", "FORM_VERS", "TODAYS_DATE", "BIRTH_DEFECT", "OFC_VISIT", "ER_ED_VISIT", "ALLERGIES",
+                "SYMPTOM1", "SYMPTOMVERSION1", "SYMPTOM2", "SYMPTOMVERSION2", "SYMPTOM3", "SYMPTOMVERSION3",
+                "SYMPTOM4", "SYMPTOMVERSION4", "SYMPTOM5", "SYMPTOMVERSION5",
+                "VAX_TYPE", "VAX_MANU", "VAX_LOT", "VAX_DOSE_SERIES", "VAX_ROUTE", "VAX_SITE", "VAX_NAME"};
+        Random random = new Random(23);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, Charset.defaultCharset());
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord((Object[]) header);
+            for (int i = 0; i < rows; i++) {
+                String[] row = Arrays.copyOf(vaersRow(FIRST_VAERS_ID + i, random), header.length);
+                for (int j = 50; j < row.length; j++) row[j] = "";
+                printer.printRecord((Object[]) row);
+            }
+        }
+    }
+
+    // The 35 VAERSDATA columns, with a SYMPTOM_TEXT of several quoted lines holding commas and quotes
+    static void writeVaersData(Path file, int rows) throws IOException {
+        Random random = new Random(21);
+        String[] header = new String[35];
+        header[0] = "VAERS_ID";
+        header[8] = "SYMPTOM_TEXT";
+        for (int i = 0; i < header.length; i++) if (header[i] == null) header[i] = "COLUMN" + i;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, Charset.defaultCharset());
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord((Object[]) header);
+            for (int i = 0; i < rows; i++) {
+                String[] row = Arrays.copyOf(vaersRow(FIRST_VAERS_ID + i, random), 35);
+                row[8] = row[8] + "\nOnset the next day, \"mild\".\r\nResolved.";
+                printer.printRecord((Object[]) row);
+            }
+        }
+    }
+
+    private interface Iteration {
+        double nsPerOp();
+    }
+
+    private static String measure(Iteration iteration) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) iteration.nsPerOp();
+        double[] results = new double[MEASURED_ITERATIONS];
+        double sum = 0;
+        for (int i = 0; i < results.length; i++) {
+            results[i] = iteration.nsPerOp();
+            sum += results[i];
+        }
+        double mean = sum / results.length;
+        double squares = 0;
+        for (double result : results) squares += (result - mean) * (result - mean);
+        return String.format("%.1f +/- %.1f", mean, Math.sqrt(squares / (results.length - 1)));
+    }
+
+    private static void printShape(String label, BPlusTree tree) {
+        TreeStats stats = tree.stats();
+        System.out.printf("%s: height %d, %,d nodes, leaves %.0f%% full, %.1f MB of nodes%n", label, stats.getHeight(),
+                Arrays.stream(stats.getNodesPerLevel()).sum(), 100 * stats.getAverageLeafFill(), stats.getNodeBytes() / (1024.0 * 1024.0));
+    }
+
+    // A row with the 35 VAERSDATA columns plus symptom and vaccine columns, as in VAERS_COVID_*.csv
+    static String[] vaersRow(int vaersId, Random random) {
+        String[] row = new String[50];
+        Arrays.fill(row, "");
+        row[0] = String.valueOf(vaersId);
+        row[1] = String.format("%02d/%02d/2021", 1 + random.nextInt(12), 1 + random.nextInt(28));
+        row[2] = "CA";
+        row[3] = String.valueOf(18 + random.nextInt(70));
+        row[6] = random.nextBoolean() ? "F" : "M";
+        row[8] = "Patient reported " + "headache, fatigue and fever ".repeat(1 + random.nextInt(8));
+        for (int i = 35; i < 45; i += 2) row[i] = random.nextBoolean() ? "Headache" : "Pyrexia";
+        row[46] = "COVID19";
+        row[47] = random.nextBoolean() ? "MODERNA" : "PFIZER\\BIONTECH";
+        row[49] = "COVID19 (COVID19 (MODERNA))";
+        return row;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double nsPerInsert(int[] keys) {
+        BPlusTree tree = new BPlusTree(ORDER);
+        long start = System.nanoTime();
+        for (int key : keys) {
+            tree.insert(key, PAYLOAD);
+        }
+        return (System.nanoTime() - start) / (double) keys.length;
+    }
+
+    // Dense ascending IDs like the ones VAERS assigns
+    private static int[] vaersIds(int count) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) keys[i] = FIRST_VAERS_ID + i;
+        return keys;
+    }
+
+    // Ascending IDs with the gaps of the COVID reports, which are about 60% of all VAERS_IDs
+    private static int[] covidIds(int count, Random random) {
+        int[] keys = new int[count];
+        int id = FIRST_VAERS_ID;
+        for (int i = 0; i < count; i++) {
+            keys[i] = id;
+            id += random.nextInt(10) < 6 ? 1 : 2 + random.nextInt(2);
+        }
+        return keys;
+    }
+
+    private static void shuffle(int[] keys, Random random) {
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package org.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPOutputStream;
+
+import static org.example.BPlusTreeBenchmark.FIRST_VAERS_ID;
+import static org.example.BPlusTreeBenchmark.vaersRow;
+import static org.example.BPlusTreeBenchmark.writeVaersData;
+
+// Correctness checks for the concurrent tree, the write-ahead log and CsvReader, kept apart from
+// the timings in BPlusTreeBenchmark. Every check runs even if an earlier one fails; the process
+// exits with status 1 if any failed, so a script or CI step can run it as a test.
+// With arguments, only the named checks, e.g. java org.example.BPlusTreeChecks writeAheadLog
+public class BPlusTreeChecks {
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) {
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("concurrentReadsDuringInserts", BPlusTreeChecks::concurrentReadsDuringInserts);
+        checks.put("writeAheadLog", BPlusTreeChecks::writeAheadLog);
+        checks.put("csvReaderAgreement", BPlusTreeChecks::csvReaderAgreement);
+
+        Set<String> only = new HashSet<>(Arrays.asList(args));
+        only.removeAll(checks.keySet());
+        if (!only.isEmpty()) {
+            System.err.println("Unknown checks " + only + "; the checks are " + checks.keySet());
+            System.exit(2);
+        }
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Check> check : checks.entrySet()) {
+            if (args.length > 0 && !Arrays.asList(args).contains(check.getKey())) continue;
+            try {
+                check.getValue().run();
+            } catch (Throwable e) {
+                System.out.println("FAILED " + check.getKey() + ": " + e);
+                e.printStackTrace();
+                failed.add(check.getKey());
+            }
+        }
+        if (!failed.isEmpty()) {
+            System.out.println(failed.size() + " check(s) failed: " + failed);
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    // Stress check for the concurrent tree: reader threads search and scan while a writer inserts.
+    // A key the writer has finished inserting (it is in the reference map) must always be found
+    // with its own record, a key that is never inserted must never be found, and range scans must
+    // stay sorted and contain every record that was loaded before they started.
+    private static void concurrentReadsDuringInserts() {
+        int preloaded = 1_000_000;
+        int inserted = 1_000_000;
+        int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        BPlusTree tree = new BPlusTree(64, true);
+        Map<Integer, String[]> reference = new ConcurrentHashMap<>();
+
+        // Even offsets are there from the start, odd ones are inserted while the readers run
+        List<Map.Entry<Integer, String[]>> initial = new ArrayList<>();
+        for (int i = 0; i < preloaded; i++) {
+            int key = FIRST_VAERS_ID + 2 * i;
+            String[] record = {String.valueOf(key)};
+            initial.add(Map.entry(key, record));
+            reference.put(key, record);
+        }
+        tree.bulkLoad(initial.iterator(), 0.7);
+        int lastKey = FIRST_VAERS_ID + 2 * preloaded;
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < readers; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                long done = 0;
+                while (writing.get()) {
+                    int key = FIRST_VAERS_ID - 1000 + random.nextInt(lastKey - FIRST_VAERS_ID + 2000);
+                    String[] expected = reference.get(key);
+                    String[] actual = tree.search(String.valueOf(key));
+                    boolean insertable = key >= FIRST_VAERS_ID && key < lastKey;
+                    if ((expected != null && actual != expected) || (actual != null && !insertable)) errors.incrementAndGet();
+                    done++;
+                    if (done % 1000 == 0) {
+                        int prev = Integer.MIN_VALUE;
+                        int evens = 0;
+                        for (Iterator<String[]> it = tree.range(key, key + 200); it.hasNext(); ) {
+                            int k = Integer.parseInt(it.next()[0]);
+                            if (k <= prev) errors.incrementAndGet();
+                            if ((k - FIRST_VAERS_ID) % 2 == 0) evens++;
+                            prev = k;
+                        }
+                        int from = Math.max(key, FIRST_VAERS_ID), to = Math.min(key + 200, lastKey - 2);
+                        int expectedEvens = from > to ? 0 : (to - FIRST_VAERS_ID) / 2 - (from - FIRST_VAERS_ID + 1) / 2 + 1;
+                        if (evens != expectedEvens) errors.incrementAndGet();
+                    }
+                }
+                lookups.addAndGet(done);
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        long start = System.nanoTime();
+        List<Integer> oddKeys = new ArrayList<>();
+        for (int i = 0; i < inserted; i++) oddKeys.add(FIRST_VAERS_ID + 2 * i + 1);
+        Collections.shuffle(oddKeys, new Random(1));
+        for (int key : oddKeys) {
+            String[] record = {String.valueOf(key)};
+            tree.insert(key, record);
+            reference.put(key, record);
+        }
+        writing.set(false);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (Map.Entry<Integer, String[]> entry : reference.entrySet()) {
+            if (tree.search(String.valueOf(entry.getKey())) != entry.getValue()) errors.incrementAndGet();
+        }
+        System.out.println("=== Concurrent tree: " + readers + " readers during " + inserted + " inserts ===");
+        System.out.printf("Inserts: %.0f/s, lookups: %.0f/s%n", inserted / seconds, lookups.get() / seconds);
+        System.out.println("Errors: " + errors.get());
+        if (errors.get() > 0) throw new IllegalStateException("Concurrent tree returned wrong results");
+    }
+
+    // Correctness check for the WriteAheadLog and the project2 flows built on it:
+    // - group commit: 8 threads append and sync at once; every record must be durable and replay,
+    //   in each thread's order
+    // - recovery: a log cut inside its last record, or with a bad checksum in a middle one, must
+    //   replay the records before it and be truncated there, and take appends again
+    // - saved index: a tree image, delta inserts logged over it, a restart that replays them into
+    //   an OverlayIndex, then a checkpoint that merges them into a new image and empties the log
+    private static void writeAheadLog() throws Exception {
+        Path directory = Files.createTempDirectory("writeAheadLog");
+        Path logFile = directory.resolve("vaers.wal");
+        Path indexFile = directory.resolve("vaers.idx");
+        try {
+            int threads = 8;
+            int perThread = 2_000;
+            long start = System.nanoTime();
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    writers.add(pool.submit(() -> {
+                        for (int i = 0; i < perThread; i++) {
+                            int key = FIRST_VAERS_ID + thread * perThread + i;
+                            log.sync(log.append(key, new String[]{String.valueOf(key), "thread " + thread, String.valueOf(i)}));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> writer : writers) writer.get();
+                pool.shutdown();
+            }
+            double msTotal = (System.nanoTime() - start) / 1e6;
+            int[] nextOf = new int[threads];
+            int replayed = replayLog(logFile, (key, record) -> {
+                int thread = Integer.parseInt(record[1].substring("thread ".length()));
+                int i = Integer.parseInt(record[2]);
+                if (i != nextOf[thread]++ || key != FIRST_VAERS_ID + thread * perThread + i || !record[0].equals(String.valueOf(key))) {
+                    throw new IllegalStateException("Record " + key + " replayed out of order or changed");
+                }
+            });
+            if (replayed != threads * perThread) throw new IllegalStateException("Replayed " + replayed + " of " + threads * perThread);
+            System.out.printf("=== WriteAheadLog: %,d concurrent append+sync from %d threads in %.0f ms, all replayed in order ===%n",
+                    replayed, threads, msTotal);
+
+            // A log of ten records, and its size after each
+            Files.delete(logFile);
+            long[] sizes = new long[10];
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                for (int i = 0; i < sizes.length; i++) {
+                    log.sync(log.append(FIRST_VAERS_ID + i, vaersRow(FIRST_VAERS_ID + i, new Random(i))));
+                    sizes[i] = Files.size(logFile);
+                }
+            }
+            try (RandomAccessFile file = new RandomAccessFile(logFile.toFile(), "rw")) {
+                file.setLength(sizes[9] - 3);  // torn inside the last record
+            }
+            expectRecovery(logFile, 9, sizes[8], "torn tail");
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                log.sync(log.append(FIRST_VAERS_ID + 9, vaersRow(FIRST_VAERS_ID + 9, new Random(9))));
+            }
+            expectRecovery(logFile, 10, sizes[9], "append after the torn tail");
+            try (RandomAccessFile file = new RandomAccessFile(logFile.toFile(), "rw")) {
+                file.seek(sizes[3] + 8 + 2);  // inside the key of the fifth record
+                int b = file.read();
+                file.seek(sizes[3] + 8 + 2);
+                file.write(b ^ 0x40);
+            }
+            expectRecovery(logFile, 4, sizes[3], "bad checksum");
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                log.reset();
+            }
+            expectRecovery(logFile, 0, 0, "reset");
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                for (int i = 0; i < 3; i++) log.append(FIRST_VAERS_ID + i, vaersRow(FIRST_VAERS_ID + i, new Random(i)));
+            }
+            expectRecovery(logFile, 3, sizes[2], "close without sync");
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { })) {
+                log.reset();
+            }
+            System.out.println("  torn tail, bad checksum, reset and close recover as expected");
+
+            // Saved index flow, as project2 runs it
+            int order = 32;
+            int saved = 5_000;
+            int delta = 300;
+            Random random = new Random(14);
+            BPlusTree tree = new BPlusTree(order);
+            for (int i = 0; i < saved; i++) tree.insert(FIRST_VAERS_ID + 2 * i, vaersRow(FIRST_VAERS_ID + 2 * i, random));
+            BPlusTreeFile.write(tree, indexFile);
+            try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> { });
+                 BPlusTreeFile image = BPlusTreeFile.open(indexFile)) {
+                long last = 0;
+                for (int i = 0; i < delta; i++) {
+                    int key = FIRST_VAERS_ID + 2 * i + 1;  // between the saved keys
+                    if (image.search(key)) throw new IllegalStateException("Delta key " + key + " already saved");
+                    last = log.append(key, vaersRow(key, random));
+                }
+                log.sync(last);
+            }
+            // Restart: the image is reopened and the log replayed on top
+            BPlusTreeFile image = BPlusTreeFile.open(indexFile);
+            try {
+                BPlusTree recent = new BPlusTree(image.getOrder());
+                try (WriteAheadLog log = WriteAheadLog.open(logFile, (key, record) -> recent.insertIfAbsent(key, () -> record))) {
+                    if (log.getReplayed() != delta) throw new IllegalStateException("Replayed " + log.getReplayed() + " of " + delta);
+                    VaersIndex index = new OverlayIndex(image, recent);
+                    expectKeys(index, saved, delta, "after restart");
+
+                    // Checkpoint: merge, save the new image, empty the log
+                    BPlusTree merged = new BPlusTree(image.getOrder());
+                    merged.bulkLoad(index.entries(Integer.MIN_VALUE, Integer.MAX_VALUE), 1.0);
+                    image.close();
+                    BPlusTreeFile.write(merged, indexFile);
+                    log.reset();
+                }
+                image = BPlusTreeFile.open(indexFile);
+                if (replayLog(logFile, (key, record) -> { }) != 0) throw new IllegalStateException("Log not empty after the checkpoint");
+                if (image.size() != saved + delta) throw new IllegalStateException("Checkpoint holds " + image.size() + " records");
+                expectKeys(image, saved, delta, "after the checkpoint");
+            } finally {
+                image.close();
+            }
+            System.out.println("  saved index: delta logged, replayed after restart, merged by the checkpoint");
+        } finally {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static int replayLog(Path logFile, BiConsumer<Integer, String[]> replay) throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(logFile, replay)) {
+            return log.getReplayed();
+        }
+    }
+
+    private static void expectRecovery(Path logFile, int records, long size, String label) throws IOException {
+        int replayed = replayLog(logFile, (key, record) -> { });
+        if (replayed != records || Files.size(logFile) != size) {
+            throw new IllegalStateException(label + ": replayed " + replayed + " records to " + Files.size(logFile)
+                    + " bytes, expected " + records + " to " + size);
+        }
+    }
+
+    // The saved keys are FIRST_VAERS_ID + 2i, the delta keys the odd ones after the first of them
+    private static void expectKeys(VaersIndex index, int saved, int delta, String label) {
+        int count = 0;
+        int previous = Integer.MIN_VALUE;
+        Iterator<Map.Entry<Integer, String[]>> entries = index.entries(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        while (entries.hasNext()) {
+            Map.Entry<Integer, String[]> entry = entries.next();
+            if (entry.getKey() <= previous || !entry.getValue()[0].equals(String.valueOf(entry.getKey()))) {
+                throw new IllegalStateException(label + ": bad entry " + entry.getKey() + " after " + previous);
+            }
+            previous = entry.getKey();
+            count++;
+        }
+        if (count != saved + delta) throw new IllegalStateException(label + ": " + count + " entries, expected " + (saved + delta));
+        for (int i = 0; i < delta; i++) {
+            if (index.search(String.valueOf(FIRST_VAERS_ID + 2 * i + 1)) == null) {
+                throw new IllegalStateException(label + ": delta key " + (FIRST_VAERS_ID + 2 * i + 1) + " missing");
+            }
+        }
+    }
+
+    // Correctness check for CsvReader: random CSV text full of quotes, commas, line breaks and
+    // blank lines must give Commons CSV's header and records, from a file with windows small
+    // enough to cut most records, and from a stream that trickles in a few bytes per read into a
+    // buffer that has to grow. Then the same through a gzipped input of a dataset directory, and a
+    // truncated one must fail on the reader's thread rather than leave it waiting.
+    private static void csvReaderAgreement() throws IOException {
+        String[] atoms = {"a", "B", "", ",", "\"", "\n", "\r\n", "\r", "x y", "COVID19", "  42 ", "-7", "\u00e9"};
+        Random random = new Random(21);
+        int checked = 0;
+        Path file = Files.createTempFile("csvReaderAgreement", ".csv");
+        try {
+            for (int t = 0; t < 3000; t++) {
+                StringBuilder text = new StringBuilder();
+                int columns = 1 + random.nextInt(5);
+                int rows = random.nextInt(8);
+                for (int row = 0; row <= rows; row++) {
+                    for (int c = 0; c < columns; c++) {
+                        if (c > 0) text.append(',');
+                        StringBuilder field = new StringBuilder();
+                        if (row == 0) field.append("h").append(c);
+                        else for (int i = random.nextInt(4); i > 0; i--) field.append(atoms[random.nextInt(atoms.length)]);
+                        String value = field.toString();
+                        if (value.matches("(?s).*[,\"\r\n].*") || random.nextInt(5) == 0) {
+                            text.append('"').append(value.replace("\"", "\"\"")).append('"');
+                        } else {
+                            text.append(value);
+                        }
+                    }
+                    text.append(random.nextBoolean() ? "\n" : random.nextBoolean() ? "\r\n" : "\n\n");
+                }
+                if (random.nextBoolean()) text.setLength(text.length() - 1);
+
+                List<String> header;
+                List<List<String>> expected = new ArrayList<>();
+                try (CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(new StringReader(text.toString()))) {
+                    header = parser.getHeaderNames();
+                    for (CSVRecord record : parser) expected.add(record.toList());
+                } catch (IOException | RuntimeException e) {
+                    continue;  // not valid CSV to Commons either, e.g. a blank header cell
+                }
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                Files.write(file, bytes);
+                for (int window : new int[]{8, 13, 64, 1 << 20}) {
+                    try (CsvReader csv = new CsvReader(file, StandardCharsets.UTF_8, window)) {
+                        compareRecords(csv, header, expected, "file, window " + window, text);
+                    } catch (IOException e) {
+                        if (!e.getMessage().contains("longer than")) throw e;  // a record past a tiny window
+                    }
+                }
+                for (int window : new int[]{1, 3, 8, 1 << 20}) {
+                    InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+                        @Override
+                        public int read(byte[] buffer, int offset, int length) throws IOException {
+                            return super.read(buffer, offset, Math.min(length, 1 + random.nextInt(5)));
+                        }
+                    };
+                    try (CsvReader csv = new CsvReader(trickle, StandardCharsets.UTF_8, window)) {
+                        compareRecords(csv, header, expected, "stream, window " + window, text);
+                    }
+                }
+                checked++;
+            }
+
+            // Blanks around fields, another quote character or none, and withIgnoreSurroundingSpaces
+            String[] blanks = {"", "", " ", "\t", "  ", " \t"};
+            Character[] quotes = {'"', '\'', null};
+            for (int t = 0; t < 3000; t++) {
+                Character quote = quotes[random.nextInt(quotes.length)];
+                boolean ignoreSpaces = random.nextBoolean();
+                StringBuilder text = new StringBuilder();
+                int columns = 1 + random.nextInt(5);
+                int rows = random.nextInt(8);
+                for (int row = 0; row <= rows; row++) {
+                    for (int c = 0; c < columns; c++) {
+                        if (c > 0) text.append(',');
+                        StringBuilder field = new StringBuilder();
+                        if (row == 0) field.append("h").append(c);
+                        else for (int i = random.nextInt(4); i > 0; i--) field.append(atoms[random.nextInt(atoms.length)]);
+                        String value = field.toString();
+                        text.append(blanks[random.nextInt(blanks.length)]);
+                        if (quote != null && (value.matches("(?s).*[,\"'\r\n].*") || random.nextInt(5) == 0)) {
+                            text.append(quote).append(value.replace(quote.toString(), quote + "" + quote)).append(quote);
+                        } else {
+                            text.append(value);
+                        }
+                        text.append(blanks[random.nextInt(blanks.length)]);
+                    }
+                    text.append(random.nextBoolean() ? "\n" : "\r\n");
+                }
+
+                List<String> header;
+                List<List<String>> expected = new ArrayList<>();
+                CSVFormat format = CSVFormat.DEFAULT.withFirstRecordAsHeader().withQuote(quote).withIgnoreSurroundingSpaces(ignoreSpaces);
+                try (CSVParser parser = format.parse(new StringReader(text.toString()))) {
+                    header = parser.getHeaderNames();
+                    for (CSVRecord record : parser) expected.add(record.toList());
+                } catch (IOException | RuntimeException e) {
+                    continue;
+                }
+                Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+                for (int window : new int[]{13, 64, 1 << 20}) {
+                    try (CsvReader csv = new CsvReader(file, StandardCharsets.UTF_8, window, quote, ignoreSpaces)) {
+                        compareRecords(csv, header, expected, "quote " + quote + ", ignoreSurroundingSpaces " + ignoreSpaces
+                                + ", window " + window, text);
+                    } catch (IOException e) {
+                        if (!e.getMessage().contains("longer than")) throw e;
+                    }
+                }
+                checked++;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        Path directory = Files.createTempDirectory("csvReaderAgreement");
+        Path data = directory.resolve("2021VAERSDATA.csv");
+        Path gzip = directory.resolve("2021VAERSDATA.csv.gz");
+        try {
+            writeVaersData(data, 20_000);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+                Files.copy(data, out);
+            }
+            List<List<String>> expected = new ArrayList<>();
+            List<String> header;
+            try (CsvReader csv = new CsvReader(data)) {
+                header = csv.getHeaderNames();
+                while (csv.next()) expected.add(Arrays.asList(csv.toArray()));
+            }
+            Files.delete(data);
+            try (DatasetInput.Directory dataset = DatasetInput.Directory.open(directory);
+                 CsvReader csv = dataset.find(data.getFileName().toString()).openCsv()) {
+                compareRecords(csv, header, expected, "gzipped input", "");
+            }
+
+            byte[] compressed = Files.readAllBytes(gzip);
+            Files.write(gzip, Arrays.copyOf(compressed, compressed.length / 2));
+            try (DatasetInput.Directory dataset = DatasetInput.Directory.open(directory);
+                 CsvReader csv = dataset.find(data.getFileName().toString()).openCsv()) {
+                while (csv.next()) csv.toArray();
+                throw new IllegalStateException("A truncated gzipped input read to the end without an error");
+            } catch (IOException expectedFailure) {
+                // the reader's thread failed, and the read that reached its end said so
+            }
+        } finally {
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(gzip);
+            Files.deleteIfExists(directory);
+        }
+        System.out.println("=== CsvReader agrees with Commons CSV on " + checked + " random files, as a file and as a stream,"
+                + " with other quote and space options, and through a gzipped input ===");
+    }
+
+    private static void compareRecords(CsvReader csv, List<String> header, List<List<String>> expected, String mode, CharSequence text)
+            throws IOException {
+        if (!csv.getHeaderNames().equals(header)) {
+            throw new IllegalStateException(mode + ": header " + csv.getHeaderNames() + ", expected " + header + " in\n" + text);
+        }
+        List<List<String>> records = new ArrayList<>();
+        while (csv.next()) records.add(Arrays.asList(csv.toArray()));
+        if (!records.equals(expected)) {
+            throw new IllegalStateException(mode + ": records " + records + ", expected " + expected + " in\n" + text);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// B+ tree stored in a page file, so a restarted process can answer lookups without re-parsing the
+// CSV files, and a tree too large for the heap can be searched at all. Page 0 is the header;
+// write() puts the node pages after it in level order and packs the records behind them. The file
+// is only ever written whole: new records go to the write-ahead log and an in-heap tree until a
+// checkpoint writes a new file.
+//
+// Header:    magic, version, order, height, root page, page size, node page count, record count,
+//            end of the used part of the file (long @36, version 2)
+// Node page: isLeaf (byte), keyCount (int @4), next leaf page (int @8, -1 if none), keys (int[order - 1] @16),
+//            then child page numbers (int[order]) for internal nodes or record offsets (long[order - 1]) for leaves
+// Record:    field count (int), then per field its UTF-8 length (int) and bytes
+//
+// Every page and record is read through a BufferPool, so the memory used is the pool budget however
+// large the file is. Lookups may run concurrently with each other.
+class BPlusTreeFile implements VaersIndex, Closeable {
+    private static final int MAGIC = 0x42505446;  // "BPTF"
+    private static final int VERSION = 2;
+    private static final int KEYS_OFFSET = 16;
+    private static final int MIN_PAGE_SIZE = 4096;
+    public static final long DEFAULT_POOL_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final int order;
+    private final int pageSize;
+    private final int slotsOffset;  // child page numbers or record offsets, after the keys
+    private final int height;
+    private final int rootPage;
+    private final long recordCount;
+
+    private BPlusTreeFile(FileChannel channel, long poolBytes) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(44);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) throw new IOException("Not a B+ tree file");
+        }
+        if (header.getInt(0) != MAGIC) throw new IOException("Not a B+ tree file");
+        int version = header.getInt(4);
+        if (version != 1 && version != VERSION) throw new IOException("Unsupported B+ tree file version " + version);
+        this.order = header.getInt(8);
+        this.height = header.getInt(12);
+        this.rootPage = header.getInt(16);
+        this.pageSize = header.getInt(20);
+        this.recordCount = header.getLong(28);
+        this.slotsOffset = KEYS_OFFSET + 4 * (order - 1);
+        this.pool = new BufferPool(channel, pageSize, poolBytes);
+    }
+
+    public static BPlusTreeFile open(Path path) throws IOException {
+        return open(path, DEFAULT_POOL_BYTES);
+    }
+
+    // Opens the file read-only with a buffer pool of poolBytes
+    public static BPlusTreeFile open(Path path, long poolBytes) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BPlusTreeFile(channel, poolBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Writes tree to path. The file is written under a temporary name and moved into place,
+    // so a crash part way through never leaves a truncated index behind.
+    public static void write(BPlusTree tree, Path path) throws IOException {
+        int order = tree.getOrder();
+        int pageSize = pageSize(order);
+
+        // Number the nodes in level order; the last level holds the leaves in key order
+        List<BPlusTreeNode> nodes = new ArrayList<>();
+        Map<BPlusTreeNode, Integer> pages = new IdentityHashMap<>();
+        Queue<BPlusTreeNode> queue = new ArrayDeque<>();
+        queue.add(tree.getRoot());
+        int height = 0;
+        while (!queue.isEmpty()) {
+            height++;
+            for (int size = queue.size(); size > 0; size--) {
+                BPlusTreeNode node = queue.poll();
+                pages.put(node, nodes.size() + 1);
+                nodes.add(node);
+                if (!node.isLeaf) {
+                    for (int i = 0; i <= node.keyCount; i++) queue.add(node.children[i]);
+                }
+            }
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Records first, remembering where each one starts
+            long recordStart = (long) (nodes.size() + 1) * pageSize;
+            List<long[]> leafRefs = new ArrayList<>();
+            long position = recordStart;
+            channel.position(recordStart);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20));
+            long recordCount = 0;
+            for (BPlusTreeNode node : nodes) {
+                if (!node.isLeaf) continue;
+                long[] refs = new long[node.keyCount];
+                for (int i = 0; i < node.keyCount; i++) {
+                    refs[i] = position;
+                    position += writeRecord(out, tree.valueAt(node, i));
+                }
+                leafRefs.add(refs);
+                recordCount += node.keyCount;
+            }
+            out.flush();
+
+            // Then the node pages
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            int leafIndex = 0;
+            for (BPlusTreeNode node : nodes) {
+                Arrays.fill(page.array(), (byte) 0);
+                page.clear();
+                page.put(0, (byte) (node.isLeaf ? 1 : 0));
+                page.putInt(4, node.keyCount);
+                page.putInt(8, node.next == null ? -1 : pages.get(node.next));
+                for (int i = 0; i < node.keyCount; i++) {
+                    page.putInt(KEYS_OFFSET + 4 * i, node.key(i));
+                }
+                int slots = KEYS_OFFSET + 4 * (order - 1);
+                if (node.isLeaf) {
+                    long[] refs = leafRefs.get(leafIndex++);
+                    for (int i = 0; i < refs.length; i++) page.putLong(slots + 8 * i, refs[i]);
+                } else {
+                    for (int i = 0; i <= node.keyCount; i++) page.putInt(slots + 4 * i, pages.get(node.children[i]));
+                }
+                writeFully(channel, page, (long) pages.get(node) * pageSize);
+            }
+
+            // Header last, so a half written file is never mistaken for a valid one
+            Arrays.fill(page.array(), (byte) 0);
+            putHeader(page, order, height, pages.get(tree.getRoot()), pageSize, nodes.size(), recordCount, position);
+            writeFully(channel, page, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String[] search(String keyStr) {
+        int key = Integer.parseInt(keyStr);
+        try {
+            long ref = find(key);
+            return ref < 0 ? null : readRecord(ref);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean search(int key) {
+        try {
+            return find(key) >= 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads one leaf at a time into the iterator, descending again for the first key of the next
+    // one, so no page stays pinned between calls
+    @Override
+    public Iterator<Map.Entry<Integer, String[]>> entries(int lo, int hi) {
+        return new Iterator<>() {
+            private final int[] keys = new int[order - 1];
+            private final long[] refs = new long[order - 1];
+            private int count;
+            private int pos;
+            private long nextKey = lo;  // lowest key not read yet, past hi once the range is done
+
+            @Override
+            public boolean hasNext() {
+                while (pos == count && nextKey <= hi) {
+                    readLeaf();
+                }
+                return pos < count;
+            }
+
+            @Override
+            public Map.Entry<Integer, String[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                try {
+                    int key = keys[pos];
+                    return Map.entry(key, readRecord(refs[pos++]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private void readLeaf() {
+                try {
+                    int leaf = findLeaf((int) nextKey);
+                    ByteBuffer page = pool.pin(leaf);
+                    int nextLeaf;
+                    try {
+                        int keyCount = page.getInt(4);
+                        int i = indexOf(page, (int) nextKey);
+                        count = 0;
+                        pos = 0;
+                        for (i = i >= 0 ? i : -(i + 1); i < keyCount; i++) {
+                            int key = page.getInt(KEYS_OFFSET + 4 * i);
+                            if (key > hi) {
+                                nextKey = Long.MAX_VALUE;
+                                return;
+                            }
+                            keys[count] = key;
+                            refs[count++] = page.getLong(slotsOffset + 8 * i);
+                        }
+                        nextLeaf = page.getInt(8);
+                    } finally {
+                        pool.unpin(leaf, false);
+                    }
+                    if (nextLeaf < 0) {
+                        nextKey = Long.MAX_VALUE;
+                        return;
+                    }
+                    ByteBuffer next = pool.pin(nextLeaf);
+                    try {
+                        nextKey = next.getInt(KEYS_OFFSET);
+                    } finally {
+                        pool.unpin(nextLeaf, false);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long size() {
+        return recordCount;
+    }
+
+    // Hit and miss counts, to size the pool budget against
+    public BufferPool getBufferPool() {
+        return pool;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Page of the leaf that would hold key
+    private int findLeaf(int key) throws IOException {
+        int node = rootPage;
+        for (int level = 0; level < height - 1; level++) {
+            ByteBuffer page = pool.pin(node);
+            int child;
+            try {
+                child = page.getInt(slotsOffset + 4 * childIndex(page, key));
+            } finally {
+                pool.unpin(node, false);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    // Record offset stored under key, or -1 if key is not in the tree
+    private long find(int key) throws IOException {
+        int leaf = findLeaf(key);
+        ByteBuffer page = pool.pin(leaf);
+        try {
+            int pos = indexOf(page, key);
+            return pos >= 0 ? page.getLong(slotsOffset + 8 * pos) : -1;
+        } finally {
+            pool.unpin(leaf, false);
+        }
+    }
+
+    private String[] readRecord(long position) throws IOException {
+        try (PageCursor cursor = new PageCursor(position)) {
+            String[] record = new String[cursor.readInt()];
+            for (int i = 0; i < record.length; i++) {
+                byte[] bytes = new byte[cursor.readInt()];
+                cursor.read(bytes);
+                record[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return record;
+        }
+    }
+
+    // Position in the file that reads bytes through the pool, keeping the page under it pinned
+    // until it moves to another page or is closed. Records may span pages.
+    private final class PageCursor implements Closeable {
+        private long position;
+        private long pinned = -1;
+        private ByteBuffer page;
+
+        PageCursor(long position) {
+            this.position = position;
+        }
+
+        int readInt() throws IOException {
+            int offset = (int) (position % pageSize);
+            if (offset <= pageSize - 4) {
+                int value = page().getInt(offset);
+                position += 4;
+                return value;
+            }
+            byte[] bytes = new byte[4];
+            read(bytes);
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        void read(byte[] dst) throws IOException {
+            for (int copied = 0; copied < dst.length; ) {
+                int offset = (int) (position % pageSize);
+                int length = Math.min(dst.length - copied, pageSize - offset);
+                page().get(offset, dst, copied, length);
+                copied += length;
+                position += length;
+            }
+        }
+
+        private ByteBuffer page() throws IOException {
+            long pageNumber = position / pageSize;
+            if (pageNumber != pinned) {
+                close();
+                page = pool.pin(pageNumber);
+                pinned = pageNumber;
+            }
+            return page;
+        }
+
+        @Override
+        public void close() {
+            if (pinned < 0) return;
+            pool.unpin(pinned, false);
+            pinned = -1;
+        }
+    }
+
+    // Position of key in the leaf, or -(insertion point) - 1 when it is not there
+    private static int indexOf(ByteBuffer page, int key) {
+        int lo = 0, hi = page.getInt(4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midKey = page.getInt(KEYS_OFFSET + 4 * mid);
+            if (midKey < key) lo = mid + 1;
+            else if (midKey > key) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    // Child to descend into for key: the first separator greater than key
+    private static int childIndex(ByteBuffer page, int key) {
+        int lo = 0, hi = page.getInt(4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (page.getInt(KEYS_OFFSET + 4 * mid) <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void putHeader(ByteBuffer page, int order, int height, int rootPage, int pageSize, int nodePages,
+                                  long recordCount, long end) {
+        page.putInt(0, MAGIC);
+        page.putInt(4, VERSION);
+        page.putInt(8, order);
+        page.putInt(12, height);
+        page.putInt(16, rootPage);
+        page.putInt(20, pageSize);
+        page.putInt(24, nodePages);
+        page.putLong(28, recordCount);
+        page.putLong(36, end);
+    }
+
+    private static int writeRecord(DataOutputStream out, String[] record) throws IOException {
+        int written = 4;
+        out.writeInt(record.length);
+        for (String field : record) {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            written += 4 + bytes.length;
+        }
+        return written;
+    }
+
+    // Smallest power of two (at least 4 KB) that holds a full leaf or internal node
+    private static int pageSize(int order) {
+        int needed = KEYS_OFFSET + 4 * (order - 1) + Math.max(4 * order, 8 * (order - 1));
+        return Math.max(MIN_PAGE_SIZE, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Keys are kept with an explicit count, either as a plain int[] or, when every key of the node is
+// within 65535 of the first one, as that base key plus 16-bit offsets in a char[]. Dense VAERS_IDs
+// make that the usual case for leaves, halving their key array and the cache lines a binary search
+// touches. Keys are only read and written through key/setKey and the methods below, which switch a
+// node to the int[] form when a key doesn't fit; compressKeys switches it back where it does.
+// Nodes of concurrent trees always use the int[] form, so latch-free readers never see a switch.
+//
+// Leaves keep their records in values (or their RecordStore references in refs) and internal
+// nodes their keyCount + 1 children. Arrays are sized for one entry above the maximum, which is
+// the overflow that triggers a split. The latch is only created for concurrent trees.
+class BPlusTreeNode {
+    boolean isLeaf;
+    int[] keys;  // null while the keys are held as offsets
+    char[] offsets;
+    int base;
+    int keyCount;
+    BPlusTreeNode[] children;
+    String[][] values;
+    long[] refs;
+    BPlusTreeNode next;
+    final StampedLock latch;
+
+    public BPlusTreeNode(boolean isLeaf, int order) {
+        this(isLeaf, order, false, false);
+    }
+
+    public BPlusTreeNode(boolean isLeaf, int order, boolean latched, boolean stored) {
+        this.isLeaf = isLeaf;
+        this.latch = latched ? new StampedLock() : null;
+        this.keys = new int[order];
+        if (isLeaf && stored) {
+            this.refs = new long[order];
+        } else if (isLeaf) {
+            this.values = new String[order][];
+        } else {
+            this.children = new BPlusTreeNode[order + 1];
+        }
+        this.next = null;
+    }
+
+    int key(int i) {
+        return keys != null ? keys[i] : base + offsets[i];
+    }
+
+    void setKey(int i, int key) {
+        if (keys == null) {
+            long offset = (long) key - base;
+            if (offset >= 0 && offset <= Character.MAX_VALUE) {
+                offsets[i] = (char) offset;
+                return;
+            }
+            widenKeys();
+        }
+        keys[i] = key;
+    }
+
+    // Switches to offsets from the first key if all keys fit in 16 bits
+    void compressKeys() {
+        if (keys == null || latch != null || keyCount == 0) return;
+        if ((long) keys[keyCount - 1] - keys[0] > Character.MAX_VALUE) return;
+        char[] packed = new char[keys.length];
+        for (int i = 0; i < keyCount; i++) packed[i] = (char) (keys[i] - keys[0]);
+        base = keys[0];
+        offsets = packed;
+        keys = null;
+    }
+
+    // The whole array is converted, not just the first keyCount keys, since a copy into this node
+    // may have filled slots past keyCount already
+    private void widenKeys() {
+        int[] wide = new int[offsets.length];
+        for (int i = 0; i < wide.length; i++) wide[i] = base + offsets[i];
+        keys = wide;
+        offsets = null;
+    }
+
+    // Position of key among the keys, or -(insertion point) - 1 when it is not there
+    int indexOf(int key) {
+        if (keys != null) return Arrays.binarySearch(keys, 0, keyCount, key);
+        long offset = (long) key - base;
+        if (offset < 0) return -1;
+        if (offset > Character.MAX_VALUE) return -(keyCount + 1);
+        return Arrays.binarySearch(offsets, 0, keyCount, (char) offset);
+    }
+
+    // Child to descend into for key: the first separator greater than key, found by binary search
+    // (on the offsets themselves when the node is compressed)
+    int childIndex(int key) {
+        int lo = 0, hi = keyCount;
+        if (keys != null) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] <= key) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+        long offset = (long) key - base;
+        if (offset < 0) return 0;
+        if (offset > Character.MAX_VALUE) return keyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid] <= offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Copies count keys from srcPos to dstPos in dst, which may be this node
+    void copyKeys(int srcPos, BPlusTreeNode dst, int dstPos, int count) {
+        if (keys != null && dst.keys != null) {
+            System.arraycopy(keys, srcPos, dst.keys, dstPos, count);
+        } else if (keys == null && dst.keys == null && base == dst.base) {
+            System.arraycopy(offsets, srcPos, dst.offsets, dstPos, count);
+        } else {
+            for (int i = 0; i < count; i++) dst.setKey(dstPos + i, key(srcPos + i));
+        }
+    }
+
+    // Opens a slot for key at pos; the caller fills in values[pos] or refs[pos]
+    void insertEntry(int pos, int key) {
+        copyEntries(pos, this, pos + 1, keyCount - pos);
+        setKey(pos, key);
+        keyCount++;
+    }
+
+    // Copies count leaf entries from srcPos to dstPos in dst, which may be this node
+    void copyEntries(int srcPos, BPlusTreeNode dst, int dstPos, int count) {
+        copyKeys(srcPos, dst, dstPos, count);
+        if (values != null) {
+            System.arraycopy(values, srcPos, dst.values, dstPos, count);
+        } else {
+            System.arraycopy(refs, srcPos, dst.refs, dstPos, count);
+        }
+    }
+
+    // Lets go of the records in [from, to) that are no longer part of this leaf
+    void clearEntries(int from, int to) {
+        if (values != null) Arrays.fill(values, from, to, null);
+    }
+
+    // Adds separator key at pos with right as the child just after it
+    void insertChild(int pos, int key, BPlusTreeNode right) {
+        copyKeys(pos, this, pos + 1, keyCount - pos);
+        System.arraycopy(children, pos + 1, children, pos + 2, keyCount - pos);
+        setKey(pos, key);
+        children[pos + 1] = right;
+        keyCount++;
+    }
+
+    // Closes the gap left by the leaf entry at pos
+    void removeEntry(int pos) {
+        copyEntries(pos + 1, this, pos, keyCount - pos - 1);
+        keyCount--;
+        clearEntries(keyCount, keyCount + 1);
+    }
+
+    // Removes separator key at pos together with the child just after it
+    void removeChild(int pos) {
+        copyKeys(pos + 1, this, pos, keyCount - pos - 1);
+        System.arraycopy(children, pos + 2, children, pos + 1, keyCount - pos - 1);
+        children[keyCount] = null;
+        keyCount--;
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// A fixed number of page-sized frames over a file, so a tree far larger than the heap is read and
+// written through a bounded amount of memory. A page is pinned while it is in use and keeps its
+// frame until every pin is released; unpin marks it dirty if it was changed, and a dirty page is
+// written back when its frame is reused, or by flush().
+//
+// Eviction is CLOCK, with the second-chance bit set only by a hit: a page read once, as the leaves
+// of a long range scan are, loses its frame the first time the hand reaches it, while the internal
+// nodes that every descent passes through keep theirs.
+class BufferPool {
+    private static final int MIN_FRAMES = 16;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final ByteBuffer[] frames;  // allocated as they are first used
+    private final long[] pageOf;  // page held by each frame, -1 while the frame is free
+    private final int[] pins;
+    private final boolean[] referenced;
+    private final boolean[] dirty;
+    private final Map<Long, Integer> frameOf = new HashMap<>();
+    private int used;
+    private int hand;
+    private long hits;
+    private long misses;
+    private long writeBacks;
+
+    public BufferPool(FileChannel channel, int pageSize, long budgetBytes) {
+        long frameCount = budgetBytes / pageSize;
+        if (frameCount < MIN_FRAMES) {
+            throw new IllegalArgumentException("Buffer pool budget must hold at least " + MIN_FRAMES + " pages of " + pageSize + " bytes");
+        }
+        int count = (int) Math.min(frameCount, Integer.MAX_VALUE - 8);
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new ByteBuffer[count];
+        this.pageOf = new long[count];
+        this.pins = new int[count];
+        this.referenced = new boolean[count];
+        this.dirty = new boolean[count];
+        Arrays.fill(pageOf, -1);
+    }
+
+    // Returns the frame holding page, reading the page in if it is not there; bytes past the end of
+    // the file read as zero. Only absolute get/put may be used on the buffer, and only until the
+    // matching unpin. Waits if every frame is pinned.
+    public synchronized ByteBuffer pin(long page) throws IOException {
+        Integer frame = frameOf.get(page);
+        if (frame == null) {
+            int free = victim();
+            // victim() may have waited, and another thread read the page in meanwhile
+            frame = frameOf.get(page);
+            if (frame == null) frame = free;
+        }
+        if (pageOf[frame] == page) {
+            hits++;
+            referenced[frame] = true;
+        } else {
+            misses++;
+            evict(frame);
+            ByteBuffer buffer = frames[frame];
+            buffer.clear();
+            long position = page * pageSize;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) break;
+            }
+            Arrays.fill(buffer.array(), buffer.position(), pageSize, (byte) 0);
+            pageOf[frame] = page;
+            frameOf.put(page, frame);
+        }
+        pins[frame]++;
+        return frames[frame];
+    }
+
+    // Releases one pin of page; dirtied says whether the caller changed it
+    public synchronized void unpin(long page, boolean dirtied) {
+        Integer frame = frameOf.get(page);
+        if (frame == null || pins[frame] == 0) throw new IllegalStateException("Page " + page + " is not pinned");
+        if (dirtied) dirty[frame] = true;
+        if (--pins[frame] == 0) notifyAll();
+    }
+
+    // Writes every dirty page back to the file, without forcing it to disk
+    public synchronized void flush() throws IOException {
+        for (int frame = 0; frame < used; frame++) {
+            if (dirty[frame]) writeBack(frame);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Dirty pages written out, by eviction or flush()
+    public synchronized long getWriteBacks() {
+        return writeBacks;
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public long getBudgetBytes() {
+        return (long) frames.length * pageSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("Buffer pool: %d of %d pages used, %d hits, %d misses (%.1f%% hit rate), %d write-backs",
+                used, frames.length, hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, writeBacks);
+    }
+
+    // Frame to load the next page into: a free one while there are any, else the first unpinned
+    // frame under the hand that has not been hit since the hand last passed it
+    private int victim() {
+        if (used < frames.length) {
+            frames[used] = ByteBuffer.allocate(pageSize);
+            return used++;
+        }
+        while (true) {
+            for (int swept = 0; swept < 2 * frames.length; swept++) {
+                int frame = hand;
+                hand = (hand + 1) % frames.length;
+                if (pins[frame] > 0) continue;
+                if (referenced[frame]) {
+                    referenced[frame] = false;
+                    continue;
+                }
+                return frame;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a buffer pool frame", e);
+            }
+        }
+    }
+
+    private void evict(int frame) throws IOException {
+        if (pageOf[frame] < 0) return;
+        if (dirty[frame]) writeBack(frame);
+        frameOf.remove(pageOf[frame]);
+        pageOf[frame] = -1;
+        referenced[frame] = false;
+    }
+
+    private void writeBack(int frame) throws IOException {
+        ByteBuffer buffer = frames[frame].duplicate();
+        buffer.clear();
+        long position = pageOf[frame] * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        dirty[frame] = false;
+        writeBacks++;
+    }
+}
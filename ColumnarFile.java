@@ -0,0 +1,506 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A VAERS_COVID_* table stored by column, so a reader that needs a few columns maps and decodes
+// only those, and pays no CSV parsing for them. Each column has one of three types, chosen from
+// its values when the file is written:
+//
+//   INT     every non-empty value is an int written the way Integer.toString writes it (VAERS_ID);
+//           a null bitmap, where empty values have their bit set, then an int per row
+//   DICT    at most MAX_DICTIONARY distinct values, and at most one per two rows (SEX, VAX_NAME,
+//           SYMPTOM1..5); the distinct values, then a 1 or 2 byte code per row
+//   STRING  anything else (SYMPTOM_TEXT); an int offset per row plus one, then the UTF-8 bytes
+//
+// File: magic (int), version (int), row count (int), column count (int), then per column its name
+// (as DataOutput.writeUTF), type (byte), and the offset and length (longs) of its block. A
+// dictionary block is its entry count (int), code width (int), each entry as a length (int) and
+// UTF-8 bytes, then the codes. All numbers are big-endian.
+class ColumnarFile implements Closeable {
+    public static final String EXTENSION = ".vcol";
+    private static final int MAGIC = 0x56434F4C;  // "VCOL"
+    private static final int VERSION = 1;
+    private static final int MAX_DICTIONARY = 1 << 16;
+    private static final int WRITE_BUFFER = 64 << 10;
+
+    enum Type { INT, DICT, STRING }
+
+    private final FileChannel channel;
+    private final int rowCount;
+    private final List<String> names;
+    private final Type[] types;
+    private final long[] offsets;
+    private final long[] lengths;
+    private final Map<String, Integer> columnOf = new HashMap<>();
+    private final Column[] opened;
+
+    private ColumnarFile(FileChannel channel, int rowCount, List<String> names, Type[] types, long[] offsets, long[] lengths) {
+        this.channel = channel;
+        this.rowCount = rowCount;
+        this.names = Collections.unmodifiableList(names);
+        this.types = types;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.opened = new Column[names.size()];
+        for (int i = 0; i < names.size(); i++) columnOf.putIfAbsent(names.get(i), i);
+    }
+
+    // The columnar file kept next to a Task 1 CSV output
+    public static Path pathFor(Path csv) {
+        String name = csv.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return csv.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + EXTENSION);
+    }
+
+    public static ColumnarFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            // Not closed: that would close the channel the columns are mapped from
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            if (in.readInt() != MAGIC) throw new IOException(path + " is not a columnar file");
+            if (in.readInt() != VERSION) throw new IOException(path + " has an unsupported version");
+            int rowCount = in.readInt();
+            int columnCount = in.readInt();
+            List<String> names = new ArrayList<>();
+            Type[] types = new Type[columnCount];
+            long[] offsets = new long[columnCount];
+            long[] lengths = new long[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names.add(in.readUTF());
+                types[i] = Type.values()[in.readByte()];
+                offsets[i] = in.readLong();
+                lengths[i] = in.readLong();
+                if (offsets[i] + lengths[i] > channel.size()) throw new IOException(path + " is truncated");
+            }
+            return new ColumnarFile(channel, rowCount, names, types, offsets, lengths);
+        } catch (EOFException e) {
+            channel.close();
+            throw new IOException(path + " is truncated", e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<String> getColumnNames() {
+        return names;
+    }
+
+    // The named column, mapped and ready to read, or null if the file has no such column. Only
+    // the columns asked for are ever read from the file.
+    public Column column(String name) throws IOException {
+        Integer index = columnOf.get(name);
+        return index == null ? null : column(index);
+    }
+
+    public synchronized Column column(int index) throws IOException {
+        if (opened[index] == null) {
+            MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], lengths[index]);
+            opened[index] = new Column(names.get(index), types[index], block, rowCount);
+        }
+        return opened[index];
+    }
+
+    // Drops the file's references to its mapped columns, so they are released once the Columns
+    // handed out are unreachable too; until then Windows won't let the file be replaced or deleted
+    @Override
+    public synchronized void close() throws IOException {
+        Arrays.fill(opened, null);
+        channel.close();
+    }
+
+    // One column's values, by row number
+    static final class Column {
+        private final String name;
+        private final Type type;
+        private final MappedByteBuffer block;
+        private final int rowCount;
+        private final int valuesStart;  // INT: the ints; DICT: the codes; STRING: the UTF-8 bytes
+        private final int codeWidth;
+        private final String[] dictionary;
+
+        private Column(String name, Type type, MappedByteBuffer block, int rowCount) {
+            this.name = name;
+            this.type = type;
+            this.block = block;
+            this.rowCount = rowCount;
+            if (type == Type.INT) {
+                valuesStart = bitmapBytes(rowCount);
+                codeWidth = 0;
+                dictionary = null;
+            } else if (type == Type.DICT) {
+                int entries = block.getInt(0);
+                codeWidth = block.getInt(4);
+                dictionary = new String[entries];
+                int pos = 8;
+                for (int i = 0; i < entries; i++) {
+                    byte[] bytes = new byte[block.getInt(pos)];
+                    block.get(pos + 4, bytes);
+                    dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+                    pos += 4 + bytes.length;
+                }
+                valuesStart = pos;
+            } else {
+                valuesStart = 4 * (rowCount + 1);
+                codeWidth = 0;
+                dictionary = null;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String get(int row) {
+            checkRow(row);
+            switch (type) {
+                case INT:
+                    return isNull(row) ? "" : Integer.toString(block.getInt(valuesStart + 4 * row));
+                case DICT:
+                    return dictionary[code(row)];
+                default:
+                    int start = block.getInt(4 * row);
+                    byte[] bytes = new byte[block.getInt(4 * (row + 1)) - start];
+                    block.get(valuesStart + start, bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        // The value as an int; for an INT column without decoding anything
+        public int getInt(int row) {
+            if (type != Type.INT || isNull(row)) return Integer.parseInt(get(row).trim());
+            return block.getInt(valuesStart + 4 * row);
+        }
+
+        // Whether the value is empty, for an INT column; other types keep empty values as ""
+        public boolean isNull(int row) {
+            checkRow(row);
+            return type == Type.INT && (block.get(row >>> 3) & (1 << (row & 7))) != 0;
+        }
+
+        // The dictionary index of the value in a DICT column, so rows can be grouped or compared
+        // without decoding them
+        public int code(int row) {
+            checkRow(row);
+            if (type != Type.DICT) throw new IllegalStateException("Column " + name + " is " + type + ", not DICT");
+            return codeWidth == 1 ? block.get(valuesStart + row) & 0xFF : block.getShort(valuesStart + 2 * row) & 0xFFFF;
+        }
+
+        // The distinct values of a DICT column, indexed by code
+        public List<String> dictionary() {
+            if (type != Type.DICT) throw new IllegalStateException("Column " + name + " is " + type + ", not DICT");
+            return Collections.unmodifiableList(Arrays.asList(dictionary));
+        }
+
+        private void checkRow(int row) {
+            if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+
+    // Writes the CSV file csv (with a header row) as a columnar file at out. Two passes over the
+    // CSV: the first picks each column's type and the size of its block, the second writes every
+    // column's values at their place in the file, so memory holds the dictionaries and a small
+    // buffer per column, not the table.
+    public static void convert(Path csv, Path out) throws IOException {
+        List<String> names;
+        ColumnPlan[] plans;
+        int rows = 0;
+        try (CsvReader reader = new CsvReader(csv)) {
+            names = reader.getHeaderNames();
+            plans = new ColumnPlan[names.size()];
+            for (int i = 0; i < plans.length; i++) plans[i] = new ColumnPlan();
+            while (reader.next()) {
+                for (int i = 0; i < plans.length; i++) plans[i].see(i < reader.size() ? reader.get(i) : "");
+                rows++;
+            }
+        }
+
+        long position = 16;
+        for (String name : names) position += 2 + utfLength(name) + 1 + 16;
+        long[] offsets = new long[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i].decide(rows);
+            offsets[i] = position;
+            position += plans[i].blockLength(rows);
+        }
+
+        Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter[] writers = new ColumnWriter[plans.length];
+            for (int i = 0; i < plans.length; i++) writers[i] = new ColumnWriter(channel, plans[i], offsets[i], rows);
+            try (CsvReader reader = new CsvReader(csv)) {
+                int row = 0;
+                while (reader.next()) {
+                    for (int i = 0; i < writers.length; i++) writers[i].add(row, i < reader.size() ? reader.get(i) : "");
+                    row++;
+                }
+            }
+            for (ColumnWriter writer : writers) writer.finish();
+
+            // Directory last, so a half written file is never mistaken for a valid one
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(rows);
+            header.writeInt(plans.length);
+            for (int i = 0; i < plans.length; i++) {
+                header.writeUTF(names.get(i));
+                header.writeByte(plans[i].type.ordinal());
+                header.writeLong(offsets[i]);
+                header.writeLong(plans[i].blockLength(rows));
+            }
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), 0);
+            channel.force(true);
+        }
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // What the first pass learns about a column: whether its values are all ints, its distinct
+    // values while there are few enough to keep, and its size as UTF-8
+    private static final class ColumnPlan {
+        private boolean ints = true;
+        private boolean anyValue;
+        private Map<String, Integer> distinct = new HashMap<>();
+        private List<String> entries = new ArrayList<>();
+        private long utf8Bytes;
+        private Type type;
+        private int codeWidth;
+
+        void see(String value) {
+            if (!value.isEmpty()) {
+                anyValue = true;
+                if (ints && !isCanonicalInt(value)) ints = false;
+            }
+            if (distinct != null && distinct.putIfAbsent(value, entries.size()) == null) {
+                entries.add(value);
+                if (entries.size() > MAX_DICTIONARY) {
+                    distinct = null;
+                    entries = null;
+                }
+            }
+            utf8Bytes += utf8Length(value);
+        }
+
+        void decide(int rows) throws IOException {
+            if (ints && anyValue) {
+                type = Type.INT;
+            } else if (distinct != null && entries.size() <= Math.max(1, rows / 2)) {
+                type = Type.DICT;
+                codeWidth = entries.size() <= 256 ? 1 : 2;
+            } else {
+                type = Type.STRING;
+                if (utf8Bytes > Integer.MAX_VALUE - 4L * (rows + 1)) throw new IOException("Column too large for a columnar file");
+                distinct = null;
+                entries = null;
+            }
+        }
+
+        long blockLength(int rows) {
+            switch (type) {
+                case INT:
+                    return bitmapBytes(rows) + 4L * rows;
+                case DICT:
+                    long length = 8;
+                    for (String entry : entries) length += 4 + utf8Length(entry);
+                    return length + (long) codeWidth * rows;
+                default:
+                    return 4L * (rows + 1) + utf8Bytes;
+            }
+        }
+    }
+
+    // Second pass of one column: streams its values into its block through buffers of its own
+    private static final class ColumnWriter {
+        private final ColumnPlan plan;
+        private final int rows;
+        private final Region head;  // INT: the null bitmap; STRING: the offsets; DICT: the codes
+        private final Region values;  // INT: the ints; STRING: the bytes
+        private int bitmapByte;
+        private int stringOffset;
+
+        ColumnWriter(FileChannel channel, ColumnPlan plan, long offset, int rows) throws IOException {
+            this.plan = plan;
+            this.rows = rows;
+            if (plan.type == Type.DICT) {
+                Region dictionary = new Region(channel, offset);
+                dictionary.putInt(plan.entries.size());
+                dictionary.putInt(plan.codeWidth);
+                long pos = offset + 8;
+                for (String entry : plan.entries) {
+                    byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+                    dictionary.putInt(bytes.length);
+                    dictionary.put(bytes);
+                    pos += 4 + bytes.length;
+                }
+                dictionary.flush();
+                this.head = new Region(channel, pos);
+                this.values = null;
+            } else if (plan.type == Type.INT) {
+                this.head = new Region(channel, offset);
+                this.values = new Region(channel, offset + bitmapBytes(rows));
+            } else {
+                this.head = new Region(channel, offset);
+                this.values = new Region(channel, offset + 4L * (rows + 1));
+            }
+        }
+
+        void add(int row, String value) throws IOException {
+            switch (plan.type) {
+                case INT:
+                    if (value.isEmpty()) bitmapByte |= 1 << (row & 7);
+                    values.putInt(value.isEmpty() ? 0 : Integer.parseInt(value));
+                    if ((row & 7) == 7) {
+                        head.put((byte) bitmapByte);
+                        bitmapByte = 0;
+                    }
+                    break;
+                case DICT:
+                    int code = plan.distinct.get(value);
+                    if (plan.codeWidth == 1) head.put((byte) code);
+                    else head.putShort((short) code);
+                    break;
+                default:
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    head.putInt(stringOffset);
+                    values.put(bytes);
+                    stringOffset += bytes.length;
+            }
+        }
+
+        void finish() throws IOException {
+            if (plan.type == Type.INT && (rows & 7) != 0) head.put((byte) bitmapByte);  // the last, partly filled byte
+            if (plan.type == Type.STRING) head.putInt(stringOffset);
+            head.flush();
+            if (values != null) values.flush();
+        }
+    }
+
+    // Sequential writes to one place in the file, through a buffer
+    private static final class Region {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+        private long position;
+
+        Region(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) flush();
+            buffer.put(b);
+        }
+
+        void putShort(short value) throws IOException {
+            if (buffer.remaining() < 2) flush();
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) flush();
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                if (!buffer.hasRemaining()) flush();
+                int n = Math.min(buffer.remaining(), bytes.length - done);
+                buffer.put(bytes, done, n);
+                done += n;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            int length = buffer.remaining();
+            writeFully(channel, buffer, position);
+            position += length;
+            buffer.clear();
+        }
+    }
+
+    private static boolean isCanonicalInt(String value) {
+        int length = value.length();
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 10) return false;
+        if (value.charAt(start) == '0' && length - start > 1) return false;  // leading zeros would be lost
+        if (start == 1 && length == 2 && value.charAt(1) == '0') return false;  // "-0"
+        long parsed = 0;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return false;
+            parsed = parsed * 10 + (c - '0');
+        }
+        if (start == 1) parsed = -parsed;
+        return parsed >= Integer.MIN_VALUE && parsed <= Integer.MAX_VALUE;
+    }
+
+    private static int bitmapBytes(int rows) {
+        return (rows + 7) / 8;
+    }
+
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // Bytes DataOutput.writeUTF takes for value, without its two length bytes
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 1 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads a CSV file with a header row, in the dialect of CSVFormat.DEFAULT (commas, double quotes,
+// "" for a quote inside a quoted field, CRLF, LF or CR between records, empty lines skipped).
+// The bytes are parsed where they lie in memory-mapped windows of the file: a record is a set of
+// field offsets into the window, and a field only becomes a String when get() asks for it, so
+// rows that are filtered out (by getInt or equalsIgnoreCase) cost no allocation at all.
+//
+// Column names are resolved to indexes once, with column(), before the loop:
+//
+//   try (CsvReader csv = new CsvReader(path)) {
+//       int id = csv.requireColumn("VAERS_ID");
+//       while (csv.next()) { ... csv.getInt(id) ... }
+//   }
+//
+// Quoted fields may hold delimiters and line breaks, as SYMPTOM_TEXT does. A record must fit in
+// one window; one that runs past the end of the window is parsed again from a window mapped at
+// its start. The accessors describe the current record and are only valid until the next next().
+//
+// A stream (a decompressed input, say) is read the same way from a heap buffer instead: the
+// unparsed tail is moved to the front and the rest refilled from the stream, and the buffer
+// doubles for a record longer than it.
+//
+// As in Commons CSV, blanks between a closing quote and the delimiter are skipped. Two of its
+// options are supported too: another quote character, or none (withQuote), and dropping the
+// blanks around unquoted fields and before an opening quote (withIgnoreSurroundingSpaces).
+class CsvReader implements Closeable {
+    private static final int WINDOW_SIZE = 256 << 20;
+    private static final int STREAM_WINDOW_SIZE = 4 << 20;
+
+    private final FileChannel channel;  // null when reading a stream
+    private final InputStream in;  // null when reading a file
+    private final long fileSize;
+    private final Charset charset;
+    private final int windowSize;
+    private final int quote;  // -1 for none
+    private final boolean ignoreSurroundingSpaces;
+    private final List<String> header;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private boolean lastWindow;
+    private int pos;
+    private long recordNumber;  // records returned by next(), not counting the header
+    private int fieldCount;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private boolean[] escaped = new boolean[32];  // the field holds doubled quotes, to be undoubled on get()
+    private byte[] scratch = new byte[256];
+
+    // Reads file in the JVM's default charset, as a FileReader would
+    public CsvReader(Path file) throws IOException {
+        this(file, Charset.defaultCharset());
+    }
+
+    public CsvReader(Path file, Charset charset) throws IOException {
+        this(file, charset, WINDOW_SIZE);
+    }
+
+    // Reads file with quote as the quote character (none if null), dropping the blanks around
+    // unquoted fields if ignoreSurroundingSpaces, like CSVFormat.DEFAULT.withQuote(quote)
+    // .withIgnoreSurroundingSpaces(ignoreSurroundingSpaces)
+    public CsvReader(Path file, Charset charset, Character quote, boolean ignoreSurroundingSpaces) throws IOException {
+        this(file, charset, WINDOW_SIZE, quote, ignoreSurroundingSpaces);
+    }
+
+    CsvReader(Path file, Charset charset, int windowSize) throws IOException {
+        this(file, charset, windowSize, '"', false);
+    }
+
+    CsvReader(Path file, Charset charset, int windowSize, Character quote, boolean ignoreSurroundingSpaces) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ), null, charset, windowSize, quote, ignoreSurroundingSpaces);
+    }
+
+    // Reads in in the JVM's default charset, and closes it on close()
+    public CsvReader(InputStream in) throws IOException {
+        this(in, Charset.defaultCharset());
+    }
+
+    public CsvReader(InputStream in, Charset charset) throws IOException {
+        this(in, charset, STREAM_WINDOW_SIZE);
+    }
+
+    CsvReader(InputStream in, Charset charset, int windowSize) throws IOException {
+        this(null, in, charset, windowSize, '"', false);
+    }
+
+    private CsvReader(FileChannel channel, InputStream in, Charset charset, int windowSize, Character quote,
+                      boolean ignoreSurroundingSpaces) throws IOException {
+        this.channel = channel;
+        this.in = in;
+        this.charset = charset;
+        this.windowSize = windowSize;
+        if (quote != null && (quote > 0x7F || quote == ',' || quote == '\n' || quote == '\r')) {
+            if (channel != null) channel.close();
+            throw new IllegalArgumentException("Unsupported quote character '" + quote + "'");
+        }
+        this.quote = quote == null ? -1 : quote;
+        this.ignoreSurroundingSpaces = ignoreSurroundingSpaces;
+        try {
+            this.fileSize = channel == null ? -1 : channel.size();
+            if (channel == null) {
+                window = ByteBuffer.allocate(windowSize);
+                refill();
+            } else {
+                map(0);
+            }
+            List<String> names = new ArrayList<>();
+            if (readRecord()) {
+                for (int i = 0; i < fieldCount; i++) {
+                    names.add(get(i));
+                    columns.putIfAbsent(names.get(i), i);
+                }
+            }
+            this.header = Collections.unmodifiableList(names);
+            this.recordNumber = 0;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public List<String> getHeaderNames() {
+        return header;
+    }
+
+    // Index of the named column, or -1 if the header has no such column
+    public int column(String name) {
+        Integer column = columns.get(name);
+        return column == null ? -1 : column;
+    }
+
+    public int requireColumn(String name) {
+        int column = column(name);
+        if (column < 0) throw new IllegalArgumentException("Column '" + name + "' not found in header " + header);
+        return column;
+    }
+
+    // Moves to the next record; false at the end of the file
+    public boolean next() throws IOException {
+        return readRecord();
+    }
+
+    // Number of the current record, 1 for the first after the header
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    // Fields in the current record, which may differ from the header's count
+    public int size() {
+        return fieldCount;
+    }
+
+    public String get(int column) {
+        checkColumn(column);
+        int length = copyField(column);
+        return new String(scratch, 0, length, charset);
+    }
+
+    // The fields of the current record as Strings
+    public String[] toArray() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) fields[i] = get(i);
+        return fields;
+    }
+
+    // The field as an int, ignoring surrounding spaces, without making a String of it
+    public int getInt(int column) {
+        checkColumn(column);
+        int start = starts[column];
+        int end = ends[column];
+        while (start < end && isSpace(window.get(start))) start++;
+        while (end > start && isSpace(window.get(end - 1))) end--;
+        boolean negative = start < end && window.get(start) == '-';
+        int i = negative || (start < end && window.get(start) == '+') ? start + 1 : start;
+        if (i == end || escaped[column] || end - i > 10) throw new NumberFormatException("For input string: \"" + get(column) + "\"");
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("For input string: \"" + get(column) + "\"");
+            value = value * 10 + digit;
+        }
+        if (negative) value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw new NumberFormatException("For input string: \"" + get(column) + "\"");
+        return (int) value;
+    }
+
+    // Whether the field equals the ASCII text, ignoring case, without making a String of it
+    public boolean equalsIgnoreCase(int column, String ascii) {
+        checkColumn(column);
+        int start = starts[column];
+        if (escaped[column] || ends[column] - start != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            int b = window.get(start + i);
+            int c = ascii.charAt(i);
+            if (b != c && toUpper(b) != toUpper(c)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        if (channel != null) channel.close();
+        if (in != null) in.close();
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= fieldCount) {
+            throw new IndexOutOfBoundsException("Column " + column + " of record " + recordNumber + ", which has " + fieldCount + " fields");
+        }
+    }
+
+    // Copies the field's bytes into scratch, undoubling "" pairs, and returns their count
+    private int copyField(int column) {
+        int start = starts[column];
+        int length = ends[column] - start;
+        if (scratch.length < length) scratch = new byte[Math.max(length, 2 * scratch.length)];
+        if (!escaped[column]) {
+            window.get(start, scratch, 0, length);
+            return length;
+        }
+        int n = 0;
+        for (int i = start; i < ends[column]; i++) {
+            byte b = window.get(i);
+            scratch[n++] = b;
+            if (b == quote) i++;
+        }
+        return n;
+    }
+
+    private boolean readRecord() throws IOException {
+        while (true) {
+            while (pos < windowLimit && isLineBreak(window.get(pos))) pos++;
+            if (pos == windowLimit) {
+                if (lastWindow) return false;
+                advance();
+                continue;
+            }
+            if (parseRecord()) {
+                recordNumber++;
+                return true;
+            }
+            if (pos == 0 && channel != null) throw new IOException("Record " + (recordNumber + 1) + " is longer than " + windowSize + " bytes");
+            advance();
+        }
+    }
+
+    // Moves the window on to start at pos
+    private void advance() throws IOException {
+        if (channel != null) {
+            map(windowStart + pos);
+        } else {
+            refill();
+        }
+    }
+
+    // Parses the record at pos into the field offsets and moves pos past it. Returns false, with
+    // pos unchanged, if the record may go on past the end of the window.
+    private boolean parseRecord() throws IOException {
+        int p = pos;
+        int n = 0;
+        while (true) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * n);
+                ends = Arrays.copyOf(ends, 2 * n);
+                escaped = Arrays.copyOf(escaped, 2 * n);
+            }
+            if (ignoreSurroundingSpaces) {
+                while (p < windowLimit && isBlank(window.get(p))) p++;
+                if (p == windowLimit && !lastWindow) return false;
+            }
+            if (p < windowLimit && window.get(p) == quote) {
+                int start = ++p;
+                boolean doubled = false;
+                while (true) {
+                    if (p >= windowLimit) {
+                        if (!lastWindow) return false;
+                        throw new IOException("End of file inside the quoted field starting in record " + (recordNumber + 1));
+                    }
+                    if (window.get(p) == quote) {
+                        if (p + 1 == windowLimit && !lastWindow) return false;
+                        if (p + 1 == windowLimit || window.get(p + 1) != quote) break;
+                        doubled = true;
+                        p++;
+                    }
+                    p++;
+                }
+                starts[n] = start;
+                ends[n] = p++;
+                escaped[n] = doubled;
+                // Blanks up to the delimiter are dropped, as Commons CSV does
+                while (p < windowLimit && isBlank(window.get(p))) p++;
+            } else {
+                int start = p;
+                while (p < windowLimit) {
+                    byte b = window.get(p);
+                    if (b == ',' || b == '\n' || b == '\r') break;
+                    p++;
+                }
+                if (p == windowLimit && !lastWindow) return false;
+                int end = p;
+                if (ignoreSurroundingSpaces) {
+                    while (end > start && isBlank(window.get(end - 1))) end--;
+                }
+                starts[n] = start;
+                ends[n] = end;
+                escaped[n] = false;
+            }
+            n++;
+            if (p == windowLimit) {
+                if (!lastWindow) return false;
+                break;
+            }
+            byte b = window.get(p++);
+            if (b == ',') continue;
+            if (b == '\r') {
+                if (p == windowLimit && !lastWindow) return false;
+                if (p < windowLimit && window.get(p) == '\n') p++;
+                break;
+            }
+            if (b == '\n') break;
+            throw new IOException("Invalid character after the quoted field in record " + (recordNumber + 1));
+        }
+        fieldCount = n;
+        pos = p;
+        return true;
+    }
+
+    private void map(long start) throws IOException {
+        int size = (int) Math.min(windowSize, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowLimit = size;
+        lastWindow = start + size == fileSize;
+        pos = 0;
+    }
+
+    // Keeps the bytes from pos on, at the front of the buffer (doubled if they fill it), and reads
+    // the stream until the buffer is full or the stream ends
+    private void refill() throws IOException {
+        int kept = windowLimit - pos;
+        byte[] buffer = window.array();
+        if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            window = ByteBuffer.wrap(buffer);
+        } else {
+            System.arraycopy(buffer, pos, buffer, 0, kept);
+        }
+        windowStart += pos;
+        int n = kept;
+        boolean end = false;
+        while (n < buffer.length) {
+            int read = in.read(buffer, n, buffer.length - n);
+            if (read < 0) {
+                end = true;
+                break;
+            }
+            n += read;
+        }
+        windowLimit = n;
+        lastWindow = end;
+        pos = 0;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    // Whitespace to Commons CSV (Character.isWhitespace) other than line breaks
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f' || (b >= 0x1C && b <= 0x1F);
+    }
+
+    private static int toUpper(int c) {
+        return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c;
+    }
+}
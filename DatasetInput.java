@@ -0,0 +1,238 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// One raw VAERS input file (2021VAERSDATA.csv, say) as it was released into the dataset
+// directory: the CSV itself, the CSV gzipped (2021VAERSDATA.csv.gz), or an entry of a ZIP
+// archive in the directory (2021VAERSData.zip, or AllVAERSDataCSVS.zip holding every year), looked
+// for in that order. Nothing is unzipped to disk; a compressed input is decompressed as a stream
+// straight into a CsvReader.
+//
+// Decompression runs on a thread of its own per opened input, a few chunks ahead of the parser,
+// so inflating and parsing overlap, and inputs read at the same time (the years Task 1 runs in
+// parallel, or entries of one archive) are decompressed in parallel. A plain CSV is still
+// memory-mapped.
+class DatasetInput {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_AHEAD = 4;
+    private static final byte[] END = new byte[0];
+
+    private final String name;
+    private final Path file;
+    private final ZipFile archive;  // null unless the input is an archive entry
+    private final ZipEntry entry;
+
+    private DatasetInput(String name, Path file, ZipFile archive, ZipEntry entry) {
+        this.name = name;
+        this.file = file;
+        this.archive = archive;
+        this.entry = entry;
+    }
+
+    // The file the input is read from, which changes whenever the input does
+    public Path getFile() {
+        return file;
+    }
+
+    // Size of the input uncompressed, exact for a plain CSV and an archive entry that records it,
+    // otherwise an estimate (a gzip trailer holds the size modulo 4 GiB)
+    public long getSize() throws IOException {
+        if (entry != null) {
+            return entry.getSize() >= 0 ? entry.getSize() : entry.getCompressedSize();
+        }
+        long size = Files.size(file);
+        if (!isGzip(file) || size < 4) return size;
+        try (RandomAccessFile gzip = new RandomAccessFile(file.toFile(), "r")) {
+            gzip.seek(size - 4);
+            long trailer = Integer.toUnsignedLong(Integer.reverseBytes(gzip.readInt()));
+            return Math.max(size, trailer);
+        }
+    }
+
+    public CsvReader openCsv() throws IOException {
+        if (entry != null) return new CsvReader(new ReadAhead(archive.getInputStream(entry), name));
+        if (!isGzip(file)) return new CsvReader(file);
+        InputStream compressed = Files.newInputStream(file);
+        try {
+            return new CsvReader(new ReadAhead(new GZIPInputStream(compressed, 1 << 16), name));
+        } catch (IOException | RuntimeException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return entry == null ? file.toString() : file + "!/" + entry.getName();
+    }
+
+    private static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    // The inputs of a dataset directory. Its archives are opened once and shared: a ZipFile can
+    // stream several entries to several threads at once.
+    static final class Directory implements Closeable {
+        private final Path directory;
+        private final List<ZipFile> archives = new ArrayList<>();
+        private final Map<String, DatasetInput> entries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);  // by file name
+
+        private Directory(Path directory) {
+            this.directory = directory;
+        }
+
+        // Indexes the entries of the ZIP archives in directory; the first archive by name wins
+        // when several hold a file of the same name
+        public static Directory open(Path directory) throws IOException {
+            Directory inputs = new Directory(directory);
+            if (!Files.isDirectory(directory)) return inputs;
+            List<Path> zips = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{zip,ZIP}")) {
+                for (Path zip : stream) zips.add(zip);
+            }
+            Collections.sort(zips);
+            try {
+                for (Path zip : zips) {
+                    ZipFile archive = new ZipFile(zip.toFile());
+                    inputs.archives.add(archive);
+                    for (ZipEntry entry : Collections.list(archive.entries())) {
+                        if (entry.isDirectory()) continue;
+                        String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                        inputs.entries.putIfAbsent(name, new DatasetInput(name, zip, archive, entry));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                inputs.close();
+                throw e;
+            }
+            return inputs;
+        }
+
+        // The input named fileName, or null if the directory has it in no form
+        public DatasetInput find(String fileName) {
+            Path csv = directory.resolve(fileName);
+            if (Files.exists(csv)) return new DatasetInput(fileName, csv, null, null);
+            Path gzip = directory.resolve(fileName + ".gz");
+            if (Files.exists(gzip)) return new DatasetInput(fileName, gzip, null, null);
+            return entries.get(fileName);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (ZipFile archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e; else failure.addSuppressed(e);
+                }
+            }
+            archives.clear();
+            if (failure != null) throw failure;
+        }
+    }
+
+    // Reads source on a thread of its own, up to CHUNKS_AHEAD chunks ahead of the reader. However
+    // that thread ends, short of being closed, it queues END, so the reader never waits on a thread
+    // that is gone; any failure on it (an Error too) is thrown by the read that reaches END.
+    private static final class ReadAhead extends InputStream {
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+        private final Thread reader;
+        private volatile Throwable failure;
+        private byte[] chunk = new byte[0];
+        private int chunkLength;
+        private int position;
+        private boolean ended;
+
+        ReadAhead(InputStream source, String name) {
+            reader = new Thread(() -> fill(source), "decompress " + name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void fill(InputStream source) {
+            boolean closed = false;
+            try (source) {
+                while (true) {
+                    byte[] next = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    int read = 0;
+                    while (length < next.length && (read = source.read(next, length, next.length - length)) >= 0) {
+                        length += read;
+                    }
+                    if (length > 0) chunks.put(length == next.length ? next : Arrays.copyOf(next, length));
+                    if (read < 0) break;
+                }
+            } catch (InterruptedException e) {
+                closed = true;
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                if (!closed) {
+                    try {
+                        chunks.put(END);
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (position == chunkLength) {
+                if (ended) return -1;
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while decompressing");
+                }
+                if (chunk == END) {
+                    ended = true;
+                    if (failure instanceof Error) throw (Error) failure;
+                    if (failure != null) throw new IOException("Could not decompress the input", failure);
+                    return -1;
+                }
+                chunkLength = chunk.length;
+                position = 0;
+            }
+            int n = Math.min(length, chunkLength - position);
+            System.arraycopy(chunk, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            reader.interrupt();
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// What each year of Task 1 was last built from: the size, modification time and SHA-256 of its
+// input files, and the size and modification time of each output they produced (or that there
+// was none). A year whose inputs have the same contents, and whose outputs are as they were left,
+// does not need to be built again.
+//
+// A file is only hashed when its size or modification time differs from the recorded ones, so
+// checking an unchanged year costs three stat calls. A file that was touched but not changed
+// hashes the same and keeps its year up to date; its new time is recorded, so it is not hashed
+// again on the next run. The inputs of a year may all be entries of one archive, and of every
+// year if it is a release of all years, so a file is hashed at most once per run.
+//
+// Saved as CSV: a first row "version,<version>", then one row per file of a year:
+// year, role (the input's name, or "output" and the output's extension), path, size (-1 for an
+// output that was not written), modified (ms), sha256 (empty for outputs).
+// A manifest of another version is ignored, so changing what Task 1 writes rebuilds every year.
+class EtlManifest {
+    private static final String OUTPUT = "output";
+    private static final long ABSENT = -1;
+
+    private final Path file;
+    private final String version;
+    private final Map<String, Map<String, Fingerprint>> years = new TreeMap<>();  // year -> role -> file
+    private final Map<Path, Fingerprint[]> hashed = new ConcurrentHashMap<>();  // files hashed this run, one each
+    private boolean changed;
+
+    private EtlManifest(Path file, String version) {
+        this.file = file;
+        this.version = version;
+    }
+
+    // Reads the manifest at file, or starts an empty one if there is none or it is of another version
+    public static EtlManifest load(Path file, String version) throws IOException {
+        EtlManifest manifest = new EtlManifest(file, version);
+        if (!Files.exists(file)) return manifest;
+        try (CsvReader csv = new CsvReader(file)) {
+            List<String> first = csv.getHeaderNames();
+            if (first.size() < 2 || !first.get(0).equals("version") || !first.get(1).equals(version)) {
+                manifest.changed = true;
+                return manifest;
+            }
+            while (csv.next()) {
+                if (csv.size() < 6) throw new IOException("Bad manifest row " + csv.getRecordNumber() + " in " + file);
+                Fingerprint fingerprint = new Fingerprint(Path.of(csv.get(2)), Long.parseLong(csv.get(3)), Long.parseLong(csv.get(4)), csv.get(5));
+                manifest.years.computeIfAbsent(csv.get(0), year -> new TreeMap<>()).put(csv.get(1), fingerprint);
+            }
+        }
+        return manifest;
+    }
+
+    // The current fingerprint of each input, by role. The recorded one is reused when the size and
+    // modification time still match; any other file is hashed.
+    public Map<String, Fingerprint> fingerprint(String year, Map<String, Path> inputs) throws IOException {
+        Map<String, Fingerprint> recorded;
+        synchronized (this) {
+            recorded = years.getOrDefault(year, Map.of());
+        }
+        Map<String, Fingerprint> current = new TreeMap<>();
+        for (Map.Entry<String, Path> input : inputs.entrySet()) {
+            Path path = input.getValue();
+            long size = Files.size(path);
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            Fingerprint known = recorded.get(input.getKey());
+            if (known != null && known.path.equals(path) && known.size == size && known.modified == modified) {
+                current.put(input.getKey(), known);
+            } else {
+                current.put(input.getKey(), hash(path, size, modified));
+            }
+        }
+        return current;
+    }
+
+    // The fingerprint of path, hashed unless this run already hashed it at this size and time.
+    // Years that share the file wait for the one hashing it rather than hash it too.
+    private Fingerprint hash(Path path, long size, long modified) throws IOException {
+        Fingerprint[] latest = hashed.computeIfAbsent(path, p -> new Fingerprint[1]);
+        synchronized (latest) {
+            Fingerprint known = latest[0];
+            if (known != null && known.size == size && known.modified == modified) return known;
+            latest[0] = new Fingerprint(path, size, modified, sha256(path));
+            return latest[0];
+        }
+    }
+
+    // Whether year was last built from inputs with the same contents into the same outputs, which
+    // are unchanged since. If so, any new modification times of the inputs are recorded.
+    public synchronized boolean isUpToDate(String year, Map<String, Fingerprint> inputs, List<Path> outputs) throws IOException {
+        Map<String, Fingerprint> recorded = years.get(year);
+        if (recorded == null || recorded.size() != inputs.size() + outputs.size()) return false;
+        for (Map.Entry<String, Fingerprint> input : inputs.entrySet()) {
+            Fingerprint known = recorded.get(input.getKey());
+            if (known == null || !known.sameContents(input.getValue())) return false;
+        }
+        for (Path output : outputs) {
+            Fingerprint built = recorded.get(outputRole(output));
+            if (built == null || !built.equals(outputFingerprint(output))) return false;
+        }
+        for (Map.Entry<String, Fingerprint> input : inputs.entrySet()) {
+            if (recorded.put(input.getKey(), input.getValue()).modified != input.getValue().modified) changed = true;
+        }
+        return true;
+    }
+
+    // Records that year was built from inputs into outputs, which need not exist if it produced none
+    public synchronized void record(String year, Map<String, Fingerprint> inputs, List<Path> outputs) throws IOException {
+        Map<String, Fingerprint> entry = new TreeMap<>(inputs);
+        for (Path output : outputs) entry.put(outputRole(output), outputFingerprint(output));
+        years.put(year, entry);
+        changed = true;
+    }
+
+    // Writes the manifest out if anything changed, replacing the old one in a single move
+    public synchronized void save() throws IOException {
+        if (!changed) return;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord("version", version);
+            for (Map.Entry<String, Map<String, Fingerprint>> year : years.entrySet()) {
+                for (Map.Entry<String, Fingerprint> role : year.getValue().entrySet()) {
+                    Fingerprint fingerprint = role.getValue();
+                    printer.printRecord(year.getKey(), role.getKey(), fingerprint.path, fingerprint.size, fingerprint.modified, fingerprint.sha256);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    // Size and modification time of an output, or a size of ABSENT if it doesn't exist. Outputs are
+    // only written by Task 1, so an edit or a deletion is enough to notice; they aren't hashed.
+    private static Fingerprint outputFingerprint(Path output) throws IOException {
+        if (!Files.exists(output)) return new Fingerprint(output, ABSENT, 0, "");
+        return new Fingerprint(output, Files.size(output), Files.getLastModifiedTime(output).toMillis(), "");
+    }
+
+    private static String outputRole(Path output) {
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? OUTPUT : OUTPUT + name.substring(dot);
+    }
+
+    private static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                digest.update(buffer.flip());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static final class Fingerprint {
+        final Path path;
+        final long size;
+        final long modified;
+        final String sha256;
+
+        Fingerprint(Path path, long size, long modified, String sha256) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.sha256 = sha256;
+        }
+
+        boolean sameContents(Fingerprint other) {
+            return path.equals(other.path) && size == other.size && sha256.equals(other.sha256);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) return false;
+            Fingerprint other = (Fingerprint) o;
+            return sameContents(other) && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified, sha256);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves lookups on one loaded index over HTTP on localhost, so other programs can query it while
+// the console loop in project2 stays free. The index is only read, and each request runs on its
+// own virtual thread where the JVM has them (Java 21 and later), or on a pooled thread otherwise.
+//
+//   GET /vaers/<id>                              the record as a JSON array of fields, 404 if none
+//   GET /vaers?ids=<id,id,...>                   JSON object from each id to its record, or null
+//   GET /vaers?from=<lo>&to=<hi>[&limit=<n>]     JSON array of [id, record] pairs in key order
+//
+// Batches and ranges are capped at MAX_RESULTS, so one request can't hold a thread for long.
+class LookupServer implements Closeable {
+    public static final int MAX_RESULTS = 10_000;
+    private static final int MAX_IDLE_CONNECTIONS = 10_000;
+
+    private final VaersIndex index;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Starts serving index on port, or on a free port if port is 0
+    public LookupServer(VaersIndex index, int port) throws IOException {
+        // Settings of the JDK server, read once when the first server is created. It writes the
+        // headers and the body of a response separately, so with Nagle's algorithm on the body
+        // waits for the client's delayed ACK, about 40 ms per request. And it closes keep-alive
+        // connections past 200 idle ones, which thousands of clients between requests exceed.
+        setDefault("sun.net.httpserver.nodelay", "true");
+        setDefault("sun.net.httpserver.maxIdleConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        this.index = index;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.executor = newPerTaskExecutor(Math.max(32, 4 * Runtime.getRuntime().availableProcessors()));
+        server.createContext("/vaers", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // A virtual thread per task on Java 21 and later. The method is looked up at run time so the
+    // code still builds for Java 17, where the fallback is a pool of fallbackThreads threads.
+    static ExecutorService newPerTaskExecutor(int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) System.setProperty(property, value);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (path.startsWith("/vaers/")) {
+                String[] record = index.search(path.substring("/vaers/".length()));
+                if (record == null) {
+                    send(exchange, 404, error("VAERS_ID not found"));
+                } else {
+                    send(exchange, 200, appendRecord(new StringBuilder(), record).toString());
+                }
+            } else if (path.equals("/vaers") && query.containsKey("ids")) {
+                send(exchange, 200, batch(query.get("ids")));
+            } else if (path.equals("/vaers") && query.containsKey("from") && query.containsKey("to")) {
+                int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : MAX_RESULTS;
+                send(exchange, 200, range(Integer.parseInt(query.get("from")), Integer.parseInt(query.get("to")), limit));
+            } else {
+                send(exchange, 400, error("Use /vaers/<id>, /vaers?ids=<id,...> or /vaers?from=<lo>&to=<hi>"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error("Bad request: " + e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String batch(String idList) {
+        String[] parts = idList.split(",");
+        if (parts.length > MAX_RESULTS) throw new IllegalArgumentException("at most " + MAX_RESULTS + " ids per request");
+        int[] ids = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) ids[i] = Integer.parseInt(parts[i].trim());
+        String[][] records = index.searchMany(ids);
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(ids[i]).append("\":");
+            if (records[i] == null) json.append("null");
+            else appendRecord(json, records[i]);
+        }
+        return json.append('}').toString();
+    }
+
+    private String range(int from, int to, int limit) {
+        if (limit < 0 || limit > MAX_RESULTS) throw new IllegalArgumentException("limit must be between 0 and " + MAX_RESULTS);
+        StringBuilder json = new StringBuilder("[");
+        Iterator<Map.Entry<Integer, String[]>> entries = index.entries(from, to);
+        for (int count = 0; count < limit && entries.hasNext(); count++) {
+            Map.Entry<Integer, String[]> entry = entries.next();
+            if (count > 0) json.append(',');
+            json.append('[').append(entry.getKey()).append(',');
+            appendRecord(json, entry.getValue()).append(']');
+        }
+        return json.append(']').toString();
+    }
+
+    private static StringBuilder appendRecord(StringBuilder json, String[] record) {
+        json.append('[');
+        for (int i = 0; i < record.length; i++) {
+            if (i > 0) json.append(',');
+            appendString(json, record[i]);
+        }
+        return json.append(']');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
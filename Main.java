@@ -1,172 +1,72 @@
 package org.example;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
+    // VAERS_IDs are assigned in increasing order, so later inserts land in the rightmost leaf and
+    // leaving free space in the bulk loaded leaves would not save any splits
+    private static final double LOAD_FILL_FACTOR = 1.0;
+    private static final String INDEX_FILE = "src/output/VAERS_COVID_index.bpt";
+    // The column names of the records in INDEX_FILE, one per line, which the image doesn't hold;
+    // the secondary indexes are rebuilt from them when the image is reopened
+    private static final String INDEX_COLUMNS_FILE = "src/output/VAERS_COVID_index.columns";
+    // Memory for the pages of the saved index; lookups read the file through this many bytes of cache
+    private static final long INDEX_POOL_BYTES = 64L << 20;
+    // Inserts made since INDEX_FILE was saved; once the log grows past CHECKPOINT_LOG_BYTES the
+    // index is saved again and the log emptied, which bounds the replay done at startup
+    private static final String LOG_FILE = "src/output/VAERS_COVID_index.wal";
+    private static final long CHECKPOINT_LOG_BYTES = 64 << 20;
+    // Heap taken by the parsed vax and symptom rows of a year in Task 1, per byte of their files.
+    // Task 1 runs vaers.etl.threads years at once (default: one per processor), within
+    // vaers.etl.memoryBytes of this estimate (default: half the maximum heap)
+    private static final long ETL_HEAP_PER_BYTE = 6;
+    // Inputs each year of Task 1 was built from, so a run only rebuilds the years whose files
+    // changed. Bump ETL_VERSION when Task 1 changes what it writes, or delete the manifest, to
+    // rebuild every year.
+    private static final String ETL_MANIFEST = "src/output/VAERS_COVID_manifest.csv";
+    // Last column of a Task 1 output: the SYMPTOMS rows of a report beyond the one in the symptom
+    // columns (see otherSymptomRows), so a report with more than five symptoms keeps them all
+    private static final String OTHER_SYMPTOM_ROWS = "OTHER_SYMPTOM_ROWS";
+    private static final String ETL_VERSION = "3";
 
     public static void project1() throws IOException {
 
         // Task 1 start
-        // Open all 3 VAERS files for each year from 1990 to 2025 and prepare them to combine and save it in an output file
-        for (int year =1990; year <= 2026; year++) {
-            String dataFile = "src/dataset/" + year + "VAERSDATA.csv";
-            String symptomFile = "src/dataset/" + year + "VAERSSYMPTOMS.csv";
-            String vaxFile = "src/dataset/" + year + "VAERSVAX.csv";
-            String outputFile = "src/output/VAERS_COVID_" + year + ".csv";
-            if(year == 2026) {
-                dataFile = "src/dataset/NonDomesticVAERSDATA.csv";
-                symptomFile = "src/dataset/NonDomesticVAERSSYMPTOMS.csv";
-                vaxFile = "src/dataset/NonDomesticVAERSVAX.csv";
-                outputFile = "src/output/VAERS_COVID_NonDomestic.csv";
-            }
-
-            File dFile = new File(dataFile);
-            File sFile = new File(symptomFile);
-            File vFile = new File(vaxFile);
-
-            if (!dFile.exists() || !sFile.exists() || !vFile.exists()) {
-                System.out.println("Skipping missing year: " + year);
-                continue;
-            }
-
-            // Step 1: Read Vaccine Data to find COVID records (get COVID VAERS_IDs) and COVID Vaccine data
-            Map<String, String> vaxMap = new HashMap<>(); // Vax data
-            Set<String> covidVaersIds = new HashSet<>(); // COVID Vax ID
-            List<String> vaxHeaders = new ArrayList<>(); // Vax headers
-            try (BufferedReader reader = new BufferedReader(new FileReader(vaxFile));
-                 CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-                for (String header : csvParser.getHeaderNames()){
-                    if(!header.equalsIgnoreCase("VAERS_ID")){
-                        vaxHeaders.add(header);
-                    }
-                }
-                for (CSVRecord record : csvParser) {
-                    if (record.get("VAX_TYPE").equalsIgnoreCase("COVID19")) {
-                        covidVaersIds.add(record.get("VAERS_ID").trim());
-                        vaxMap.put(record.get("VAERS_ID").trim(), String.join(",", record.toMap().values()));
-                    }
-                }
-            }
-            System.out.println("Found " + covidVaersIds.size() + " COVID-19 records in " + vaxFile);
-
-            // Step 2: Load Symptoms Data
-            Map<String, String> symptomsMap = new HashMap<>(); // Symptom data
-            List<String> symptomHeaders = new ArrayList<>(); // Symptom header
-            try (BufferedReader reader = new BufferedReader(new FileReader(symptomFile));
-                 CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-                for (String header : csvParser.getHeaderNames()) {
-                    if (!header.equalsIgnoreCase("VAERS_ID")) {
-                        symptomHeaders.add(header);
-                    }
-                }
-                for (CSVRecord record : csvParser) {
-                    String vaersId = record.get("VAERS_ID").trim();
-                    if (covidVaersIds.contains(vaersId)) {
-                        symptomsMap.put(vaersId, String.join(",", record.toMap().values()));
-                    }
-                }
-            }
-
-            // Step 3: Read VAERSDATA file into memory
-            List<CSVRecord> dataRecords = new ArrayList<>(); // VAERSDATA data
-            List<String> dataHeaders = new ArrayList<>(); // VAERSDATA header
-            try (BufferedReader reader = new BufferedReader(new FileReader(dataFile));
-                 CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-
-                dataHeaders.addAll(csvParser.getHeaderNames());
-                for (CSVRecord record : csvParser) {
-                    String vaersId = record.get("VAERS_ID").trim();
-                    if (covidVaersIds.contains(vaersId)) {
-                        dataRecords.add(record);
-                    }
-                }
-            }
-
-            if (dataRecords.isEmpty()) {
-                System.out.println("No matching records found for year: " + year + ". Skipping CSV write.");
-                Files.deleteIfExists(Paths.get(outputFile));
-                continue;
-            }
-
-
-            // Step 4: Combine headers for the three files
-            List<String> combinedHeaders = new ArrayList<>(dataHeaders);
-            combinedHeaders.addAll(symptomHeaders);
-            combinedHeaders.addAll(vaxHeaders);
-
-            // Step 5: Write combined data to CSV
-            int recordsWritten = 0;
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
-                 CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
-
-                // Write header row
-                csvPrinter.printRecord(combinedHeaders);
-
-                // Write each record with combined details
-                for (CSVRecord record : dataRecords) {
-                    List<String> row = new ArrayList<>(record.toMap().values());
-                    String vaersId = record.get("VAERS_ID").trim();
-
-                    String symptomData = symptomsMap.get(vaersId);
-                    if (symptomData != null) {
-                        String[] symptomArray = symptomData.split(",", -1);
-                        for (int i = 1; i < symptomArray.length; i++) { // Start from index 1 to skip the first element since the first element is the id and we already have the id from the data file
-                            row.add(symptomArray[i]);
-                        }
-                    }else {
-                        for (int i = 0; i < symptomHeaders.size(); i++) {
-                            row.add(" "); // Add empty data if we dont have any symptom data for the id
-                        }
-                    }
-
-                    String vaxData = vaxMap.get(vaersId);
-                    if (vaxData != null) {
-                        String[] vaxArray = vaxData.split(",", -1);
-                        for (int i = 1; i < vaxArray.length; i++) {  // Start from index 1 to skip the first element since the first element is the id and we already have the id from the data file
-
-                            row.add(vaxArray[i]);
-                        }
-                    } else {
-                        for (int i = 0; i < vaxHeaders.size(); i++) {
-                            row.add(" ");  // Add empty data if we dont have any vax data for the id
-                        }
-                    }
-                    csvPrinter.printRecord(row);
-                    recordsWritten++;
-                }
-            }
-
-            if (recordsWritten == 0) {
-                Files.deleteIfExists(Paths.get(outputFile));
-                System.out.println("No data written for " + outputFile + ", file deleted.");
-            } else {
-                System.out.println("Saved " + recordsWritten + " records to " + outputFile);
-            }
-            if(year== 2026){
-                System.out.println("Processed: Non Domestic");
-
-            } else {
-                System.out.println("Processed: " + year);
-            }
+        // Open all 3 VAERS files for each year from 1990 to 2025 and prepare them to combine and save it in an output file.
+        // The years are independent, so they run as parallel tasks; each year's messages are
+        // collected and printed in year order, so the console reads the same as one year at a time
+        int threads = Integer.getInteger("vaers.etl.threads", Runtime.getRuntime().availableProcessors());
+        long memoryBytes = Long.getLong("vaers.etl.memoryBytes", Runtime.getRuntime().maxMemory() / 2);
+        // csv, columnar (see ColumnarFile), or both; the later tasks read the columnar file where there is one
+        String format = System.getProperty("vaers.etl.format", "csv");
+        if (!List.of("csv", "columnar", "both").contains(format)) {
+            throw new IllegalArgumentException("vaers.etl.format must be csv, columnar or both, not " + format);
         }
+        transformYears(Math.max(1, threads), memoryBytes, !format.equals("columnar"), !format.equals("csv"));
 
         System.out.println("Processing initiated for all years.");
         // Task 1 end
 
 
         // Task 2 start
-        List<String[]> dataset = new ArrayList<>();
-
         // List headers for the required output file
         String[] headers = {"VAERS_ID", "AGE_YRS", "SEX", "VAX_NAME", "RPT_DATE", "SYMPTOM", "DIED", "DATEDIED", "SYMPTOM_TEXT"};
+        // One row per symptom, dictionary encoded: VAERS_ID and SYMPTOM_TEXT are kept once per report
+        SymptomTable dataset = new SymptomTable(headers, new boolean[]{true, false, false, false, false, false, false, false, true});
 
         // Open the created covid cases files in task one and merge into a single data
         for (int year =1990; year <= 2026; year++) {
@@ -174,47 +74,37 @@ public class Main {
             if(year == 2026){
                 filePath = "src/output/VAERS_COVID_NonDomestic.csv";
             }
-            File file = new File(filePath);
-            if (!file.exists()) continue;
-            System.out.println("Reading file: " + filePath);
-            try (BufferedReader reader = new BufferedReader(new FileReader(filePath));
-                 CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-                for (CSVRecord record : csvParser) {
-                    String vaersId = record.get("VAERS_ID").trim();
-                    String age = record.get("AGE_YRS").trim();
-                    String sex = record.get("SEX").trim();
-                    String vaxName = record.get("VAX_NAME").trim();
-                    String rptDate = record.get("RPT_DATE").trim();
-                    String died = record.get("DIED").trim();
-                    String dateDied = record.get("DATEDIED").trim();
-                    String symptomText = record.get("SYMPTOM_TEXT").trim();
-
-                    for (int i = 1; i <= 5; i++) {
-                        String symptomKey = "SYMPTOM" + i;
-                        if (record.isMapped(symptomKey) && record.get(symptomKey) != null && !record.get(symptomKey).isEmpty()) {
-                            dataset.add(new String[]{vaersId, age, sex, vaxName, rptDate, record.get(symptomKey), died, dateDied, symptomText});
-                        }
-                    }
+            String[] columns = {"VAERS_ID", "AGE_YRS", "SEX", "VAX_NAME", "RPT_DATE", "DIED", "DATEDIED", "SYMPTOM_TEXT",
+                    "SYMPTOM1", "SYMPTOM2", "SYMPTOM3", "SYMPTOM4", "SYMPTOM5"};
+            readOutputColumns(Paths.get(filePath), columns, values -> {
+                String vaersId = values[0].trim();
+                String age = values[1].trim();
+                String sex = values[2].trim();
+                String vaxName = values[3].trim();
+                String rptDate = values[4].trim();
+                String died = values[5].trim();
+                String dateDied = values[6].trim();
+                String symptomText = values[7].trim();
+
+                for (String symptom : symptomsOf(values, 8)) {
+                    dataset.add(vaersId, age, sex, vaxName, rptDate, symptom, died, dateDied, symptomText);
                 }
-            }
+            });
         }
 
-        int totalCases = dataset.size();
-        Set<String> uniqueCases= new HashSet<>();
-
-        Set<String> uniqueDeathIds = new HashSet<>();
+        int[] ids = dataset.sortKeys(0);
+        int[] diedCodes = dataset.sortKeys(6);  // "DIED" column
+        boolean[] diedYes = dataset.matching(6, died -> died.equalsIgnoreCase("Y"));
+        BitSet uniqueDeathIds = new BitSet();
 
-        for (String[] row : dataset) {
-            String vaersId = row[0];
-            uniqueCases.add(vaersId);
-            String died = row[6];  // "DIED" column
-            if (died.equalsIgnoreCase("Y")) {
-                uniqueDeathIds.add(vaersId);  // Store unique VAERS_IDs for deaths
+        for (int row = 0; row < dataset.size(); row++) {
+            if (diedYes[diedCodes[row]]) {
+                uniqueDeathIds.set(ids[row]);  // Store unique VAERS_IDs for deaths
             }
         }
 
-        int totalUniqueCases = uniqueCases.size();
-        int totalDeaths = uniqueDeathIds.size(); // Count unique deaths
+        int totalUniqueCases = dataset.distinct(0);
+        int totalDeaths = uniqueDeathIds.cardinality(); // Count unique deaths
 
         System.out.println("\n=== Summary Before Sorting ===");
         System.out.println("Total Cases: " + totalUniqueCases);
@@ -231,13 +121,15 @@ public class Main {
         System.out.print("Enter choice (1-3): ");
         int choice = scanner.nextInt();
 
-        String[][] dataArr = dataset.toArray(new String[0][0]);
+        // The sorts order row numbers by the codes of a column, which compare like its Strings
+        int[] dataArr = new int[dataset.size()];
+        for (int row = 0; row < dataArr.length; row++) dataArr[row] = row;
         long startTime = System.nanoTime();
 
         // Apply sorting algorithm to the data array
         // Column index 0 means VAERS_ID
         // Index number corresponds to header index
-        applySortingAlgorithm(dataArr, choice, 0);
+        applySortingAlgorithm(dataArr, dataset.sortKeys(0), choice);
         long endTime = System.nanoTime();
 
         // Calculating time required to complete the sorting process
@@ -247,71 +139,49 @@ public class Main {
         // Write sorted data by id to a file
         try (BufferedWriter writer = new BufferedWriter(new FileWriter("SYMPTOMDATA.csv"));
              CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(headers))) {
-            for (String[] row : dataArr) {
-                csvPrinter.printRecord(row);
+            for (int row : dataArr) {
+                csvPrinter.printRecord((Object[]) dataset.row(row));
             }
         }
         System.out.println("Sorted data saved to SYMPTOMDATA.csv.");
         // Task 2 end
 
         // Task 3 start
-        // Open the file created in task 2
-        String task3InputFile = "SYMPTOMDATA.csv";
-        List<String[]> task3Dataset = new ArrayList<>();
-        Set<String> task3DeathSet = new HashSet<>();
-
-        // Open the data and create an age group using the classifyAgeGroup method
-        try (BufferedReader reader = new BufferedReader(new FileReader(task3InputFile));
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-            for (CSVRecord record : csvParser) {
-                String vaersId = record.get("VAERS_ID").trim();
-                String age = record.get("AGE_YRS").trim();
-                String ageGroup = classifyAgeGroup(age);
-                String sex = record.get("SEX").trim();
-                String vaxName = record.get("VAX_NAME").trim();
-                String rptDate = record.get("RPT_DATE").trim();
-                String symptom = record.get("SYMPTOM").trim();
-                String died = record.get("DIED").trim();
-                String dateDied = record.get("DATEDIED").trim();
-                String symptomText = record.get("SYMPTOM_TEXT").trim();
-
-                task3Dataset.add(new String[]{vaersId, ageGroup, sex, vaxName, rptDate, symptom, died, dateDied, symptomText});
-
-                if (died.equalsIgnoreCase("Y")) {
-                    task3DeathSet.add(vaersId);
-                }
-            }
-        }
+        // The rows saved to SYMPTOMDATA.csv in task 2 are still in memory, so they are used from
+        // there rather than parsed back. Create an age group using the classifyAgeGroup method,
+        // once per distinct age
+        dataset.mapColumn(1, "AGE_GROUP", Main::classifyAgeGroup);
 
         // Sort and print the death stats by the respective column_index (see header) / category
         // Print: true to print data and false to not.
-        Collections.shuffle(task3Dataset, new Random());
-        String[][] task3DataArr = task3Dataset.toArray(new String[0][0]);
-        sortAndPrintGroupedStats(task3DataArr, choice, 1, "Age Group", true );
+        int[] task3DataArr = dataArr.clone();
+        shuffle(task3DataArr, new Random());
+        sortAndPrintGroupedStats(dataset, task3DataArr, choice, 1, "Age Group", true );
 
-        sortAndPrintGroupedStats(task3DataArr, choice, 2, "Gender", true);
+        sortAndPrintGroupedStats(dataset, task3DataArr, choice, 2, "Gender", true);
 
-        sortAndPrintGroupedStats(task3DataArr, choice, 3, "Vaccine Name", true);
+        sortAndPrintGroupedStats(dataset, task3DataArr, choice, 3, "Vaccine Name", true);
 
-        sortAndPrintGroupedStats(task3DataArr, choice, 5, "Symptom", false);
+        sortAndPrintGroupedStats(dataset, task3DataArr, choice, 5, "Symptom", false);
 
         // Task 3 end
 
 
     }
 
-    private static void applySortingAlgorithm(String[][] data, int choice, int columnIndex) {
+    // Sorts rows (row numbers) by keys[row], the codes of the column sorted on
+    private static void applySortingAlgorithm(int[] rows, int[] keys, int choice) {
         switch (choice) {
             case 1:
-                quickSort(data, 0, data.length - 1, columnIndex);
+                quickSort(rows, 0, rows.length - 1, keys);
                 System.out.println("QuickSort applied.");
                 break;
             case 2:
-                mergeSort(data, 0, data.length - 1, columnIndex);
+                mergeSort(rows, 0, rows.length - 1, keys);
                 System.out.println("MergeSort applied.");
                 break;
             case 3:
-                insertionSort(data, columnIndex);
+                insertionSort(rows, keys);
                 System.out.println("InsertionSort applied.");
                 break;
             default:
@@ -339,24 +209,24 @@ public class Main {
     }
 
 
-    private static void quickSort(String[][] data, int low, int high, int columnIndex) {
+    private static void quickSort(int[] data, int low, int high, int[] keys) {
         if (low < high) {
-            int pi = partition(data, low, high, columnIndex);
-            quickSort(data, low, pi-1, columnIndex);
-            quickSort(data, pi + 1, high, columnIndex);
+            int pi = partition(data, low, high, keys);
+            quickSort(data, low, pi-1, keys);
+            quickSort(data, pi + 1, high, keys);
         }
     }
 
-    private static int partition(String[][] data, int low, int high, int columnIndex) {
-        String pivot = data[(low + high) / 2][columnIndex]; // Middle pivot
+    private static int partition(int[] data, int low, int high, int[] keys) {
+        int pivot = keys[data[(low + high) / 2]]; // Middle pivot
         int left = low;
         int right = high;
 
         while (left <= right) {
-            while (data[left][columnIndex].compareTo(pivot) < 0) {
+            while (keys[data[left]] < pivot) {
                 left++;
             }
-            while (data[right][columnIndex].compareTo(pivot) > 0) {
+            while (keys[data[right]] > pivot) {
                 right--;
             }
             if (left <= right) {
@@ -369,30 +239,30 @@ public class Main {
     }
 
 
-    private static void mergeSort(String[][] data, int left, int right, int columnIndex) {
+    private static void mergeSort(int[] data, int left, int right, int[] keys) {
 
         if (left < right) {
             int mid = left + (right - left) / 2;
-            mergeSort(data, left, mid, columnIndex);
-            mergeSort(data, mid + 1, right, columnIndex);
-            merge(data, left, mid, right, columnIndex);
+            mergeSort(data, left, mid, keys);
+            mergeSort(data, mid + 1, right, keys);
+            merge(data, left, mid, right, keys);
         }
 
     }
 
-    private static void merge(String[][] data, int left, int mid, int right, int columnIndex) {
+    private static void merge(int[] data, int left, int mid, int right, int[] keys) {
         int n1 = mid - left + 1;
         int n2 = right - mid;
 
-        String[][] leftArray = new String[n1][];
-        String[][] rightArray = new String[n2][];
+        int[] leftArray = new int[n1];
+        int[] rightArray = new int[n2];
 
         System.arraycopy(data, left, leftArray, 0, n1);
         System.arraycopy(data, mid + 1, rightArray, 0, n2);
 
         int i = 0, j = 0, k = left;
         while (i < n1 && j < n2) {
-            if (leftArray[i][columnIndex].compareTo(rightArray[j][columnIndex]) <= 0) {
+            if (keys[leftArray[i]] <= keys[rightArray[j]]) {
                 data[k] = leftArray[i++];
             } else {
                 data[k] = rightArray[j++];
@@ -405,13 +275,13 @@ public class Main {
     }
 
 
-    private static void insertionSort(String[][] data, int columnIndex) {
+    private static void insertionSort(int[] data, int[] keys) {
 
         int n = data.length;
         for (int i = 1; i < n; i++) {
-            String[] key = data[i];
+            int key = data[i];
             int j = i - 1;
-            while (j >= 0 && data[j][columnIndex].compareTo(key[0]) > 0) {
+            while (j >= 0 && keys[data[j]] > keys[key]) {
                 data[j + 1] = data[j];
                 j--;
             }
@@ -419,34 +289,41 @@ public class Main {
         }
     }
 
-    private static void swap(String[][] data, int i, int j) {
-        String[] temp = data[i];
+    private static void swap(int[] data, int i, int j) {
+        int temp = data[i];
         data[i] = data[j];
         data[j] = temp;
     }
 
+    private static void shuffle(int[] data, Random random) {
+        for (int i = data.length - 1; i > 0; i--) {
+            swap(data, i, random.nextInt(i + 1));
+        }
+    }
 
-    private static void sortAndPrintGroupedStats(String[][] data, int choice, int columnIndex, String category, boolean print) throws IOException {
+
+    private static void sortAndPrintGroupedStats(SymptomTable dataset, int[] data, int choice, int columnIndex, String category, boolean print) throws IOException {
+        int[] keys = dataset.sortKeys(columnIndex);
         long startTime = System.nanoTime();
-        applySortingAlgorithm(data, choice, columnIndex);
+        applySortingAlgorithm(data, keys, choice);
         long endTime = System.nanoTime();
         System.out.println("Sorting completed in " + (endTime - startTime) / 1_000_000 + " ms. for " + category);
 
         if(print) {
-            Map<String, Set<String>> deathsByCategory = new LinkedHashMap<>();
-            for (String[] row : data) {
-                String key = row[columnIndex];
-                String vaersId = row[0];
-                String died = row[6];  // "DIED" column
-
-                if (died.equalsIgnoreCase("Y")) {
-                    deathsByCategory.computeIfAbsent(key, k -> new HashSet<>()).add(vaersId);
+            // Distinct VAERS_IDs that died, by category code, in the sorted order of the categories
+            int[] ids = dataset.sortKeys(0);
+            int[] diedCodes = dataset.sortKeys(6);  // "DIED" column
+            boolean[] diedYes = dataset.matching(6, died -> died.equalsIgnoreCase("Y"));
+            Map<Integer, BitSet> deathsByCategory = new LinkedHashMap<>();
+            for (int row : data) {
+                if (diedYes[diedCodes[row]]) {
+                    deathsByCategory.computeIfAbsent(keys[row], k -> new BitSet()).set(ids[row]);
                 }
             }
 
             System.out.println("\n=== Death Count by " + category + " (Sorted) ===");
-            for (Map.Entry<String, Set<String>> entry : deathsByCategory.entrySet()) {
-                System.out.println(entry.getKey() + " -> " + entry.getValue().size() + " deaths");
+            for (Map.Entry<Integer, BitSet> entry : deathsByCategory.entrySet()) {
+                System.out.println(dataset.value(columnIndex, entry.getKey()) + " -> " + entry.getValue().cardinality() + " deaths");
             }
             System.out.println("==============================");
         }
@@ -463,6 +340,305 @@ public class Main {
 //        System.out.println("Sorted data saved to GROUPED_DATA_" + category + ".csv");
     }
 
+    // Runs Task 1 for every year on a pool of threads, skipping the years the manifest shows are
+    // up to date. memoryBytes bounds the heap the running years may hold at once (see
+    // transformYear); a year larger than the whole budget still runs, but on its own. The inputs
+    // may be released as CSV, gzipped CSV or ZIP archives in src/dataset (see DatasetInput)
+    private static void transformYears(int threads, long memoryBytes, boolean writeCsv, boolean writeColumnar) throws IOException {
+        int budgetKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBytes / 1024));
+        Semaphore memoryBudget = new Semaphore(budgetKb, true);
+        EtlManifest manifest = EtlManifest.load(Paths.get(ETL_MANIFEST), ETL_VERSION);
+        try (DatasetInput.Directory dataset = DatasetInput.Directory.open(Paths.get("src/dataset"))) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<String>> reports = new ArrayList<>();
+                for (int year = 1990; year <= 2026; year++) {
+                    int y = year;
+                    reports.add(pool.submit(() -> transformYear(y, dataset, writeCsv, writeColumnar, manifest, memoryBudget, budgetKb)));
+                }
+                for (Future<String> report : reports) {
+                    System.out.print(report.get());
+                }
+            } finally {
+                // No year may still be reading the archives once they close, or writing outputs
+                // and recording them in the manifest after it is saved
+                stopAndWait(pool);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing the VAERS years", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("Could not process the VAERS years", e.getCause());
+        } finally {
+            // Years that finished are recorded even if another failed
+            manifest.save();
+        }
+    }
+
+    // Cancels the tasks not started, interrupts the running ones and waits until they have all
+    // ended; an interrupt while waiting is kept for the caller
+    private static void stopAndWait(ExecutorService pool) {
+        pool.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Joins one year's DATA, SYMPTOMS and VAX files into its output file and returns the messages
+    // to print for it. The parsed vax and symptom rows stay on the heap until the output is
+    // written, at about ETL_HEAP_PER_BYTE bytes per byte of those two files, and that much of
+    // memoryBudget (in KiB, budgetKb in all) is held meanwhile. Nothing is read past the checks if
+    // manifest shows the year's inputs and outputs unchanged since it was last built. The output is
+    // written as CSV, as a columnar file converted from it, or both; a format not asked for is
+    // deleted, so the later tasks never read a stale one.
+    private static String transformYear(int year, DatasetInput.Directory dataset, boolean writeCsv, boolean writeColumnar,
+                                        EtlManifest manifest, Semaphore memoryBudget, int budgetKb) throws IOException, InterruptedException {
+        StringBuilder report = new StringBuilder();
+        String dataFile = year + "VAERSDATA.csv";
+        String symptomFile = year + "VAERSSYMPTOMS.csv";
+        String vaxFile = year + "VAERSVAX.csv";
+        String outputFile = "src/output/VAERS_COVID_" + year + ".csv";
+        if(year == 2026) {
+            dataFile = "NonDomesticVAERSDATA.csv";
+            symptomFile = "NonDomesticVAERSSYMPTOMS.csv";
+            vaxFile = "NonDomesticVAERSVAX.csv";
+            outputFile = "src/output/VAERS_COVID_NonDomestic.csv";
+        }
+
+        DatasetInput dFile = dataset.find(dataFile);
+        DatasetInput sFile = dataset.find(symptomFile);
+        DatasetInput vFile = dataset.find(vaxFile);
+
+        if (dFile == null || sFile == null || vFile == null) {
+            line(report, "Skipping missing year: " + year);
+            return report.toString();
+        }
+
+        String label = year == 2026 ? "Non Domestic" : String.valueOf(year);
+        Map<String, Path> inputs = Map.of("data", dFile.getFile(), "symptoms", sFile.getFile(), "vax", vFile.getFile());
+        Path csvOutput = Paths.get(outputFile);
+        Path columnarOutput = ColumnarFile.pathFor(csvOutput);
+        // The outputs of the format asked for; a year built in another format is built again
+        List<Path> outputs = new ArrayList<>();
+        if (writeCsv) outputs.add(csvOutput);
+        if (writeColumnar) outputs.add(columnarOutput);
+        Map<String, EtlManifest.Fingerprint> fingerprints = manifest.fingerprint(label, inputs);
+        if (manifest.isUpToDate(label, fingerprints, outputs)) {
+            line(report, "Unchanged since the last run: " + label);
+            return report.toString();
+        }
+
+        long estimate = (vFile.getSize() + sFile.getSize()) * ETL_HEAP_PER_BYTE / 1024;
+        int memoryKb = (int) Math.max(1, Math.min(budgetKb, estimate));
+        memoryBudget.acquire(memoryKb);
+        try {
+            // Step 1: Read Vaccine Data to find COVID records (get COVID VAERS_IDs) and COVID Vaccine data.
+            // Only the vax and symptom rows of COVID reports are kept in memory, as parsed fields
+            // without the VAERS_ID column; VAERSDATA is then streamed past them in Step 3.
+            Map<Integer, String[]> vaxMap = new HashMap<>(); // COVID Vax data by VAERS_ID
+            List<String> vaxHeaders = new ArrayList<>(); // Vax headers
+            try (CsvReader csv = vFile.openCsv()) {
+                int idColumn = headersWithoutId(csv, vaxHeaders);
+                int vaxType = csv.requireColumn("VAX_TYPE");
+                while (csv.next()) {
+                    if (csv.equalsIgnoreCase(vaxType, "COVID19")) {
+                        vaxMap.put(csv.getInt(idColumn), fieldsWithout(csv, idColumn));
+                    }
+                }
+            }
+            line(report, "Found " + vaxMap.size() + " COVID-19 records in " + vFile);
+
+            if (vaxMap.isEmpty()) {
+                line(report, "No matching records found for year: " + year + ". Skipping CSV write.");
+                Files.deleteIfExists(csvOutput);
+                Files.deleteIfExists(columnarOutput);
+                manifest.record(label, fingerprints, outputs);
+                return report.toString();
+            }
+
+            // Step 2: Load Symptoms Data. A report with more than five symptoms has several rows,
+            // all kept, in file order
+            Map<Integer, List<String[]>> symptomsMap = new HashMap<>(); // Symptom data
+            List<String> symptomHeaders = new ArrayList<>(); // Symptom header
+            try (CsvReader csv = sFile.openCsv()) {
+                int idColumn = headersWithoutId(csv, symptomHeaders);
+                while (csv.next()) {
+                    int vaersId = csv.getInt(idColumn);
+                    if (vaxMap.containsKey(vaersId)) {
+                        symptomsMap.computeIfAbsent(vaersId, id -> new ArrayList<>(1)).add(fieldsWithout(csv, idColumn));
+                    }
+                }
+            }
+
+            // Step 3: Stream VAERSDATA and write each COVID record with its symptom and vax data as it is read.
+            // The columnar file is converted from the CSV, so without a CSV output it goes to a scratch file
+            Path csvWritten = writeCsv ? csvOutput : csvOutput.resolveSibling(csvOutput.getFileName() + ".tmp");
+            int recordsWritten = 0;
+            try (CsvReader csv = dFile.openCsv();
+                 BufferedWriter writer = new BufferedWriter(new FileWriter(csvWritten.toFile()));
+                 CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+
+                // Write header row: the three files' headers combined, then OTHER_SYMPTOM_ROWS
+                List<String> combinedHeaders = new ArrayList<>(csv.getHeaderNames());
+                combinedHeaders.addAll(symptomHeaders);
+                combinedHeaders.addAll(vaxHeaders);
+                combinedHeaders.add(OTHER_SYMPTOM_ROWS);
+                csvPrinter.printRecord(combinedHeaders);
+
+                int idColumn = csv.requireColumn("VAERS_ID");
+                while (csv.next()) {
+                    int vaersId = csv.getInt(idColumn);
+                    String[] vaxData = vaxMap.get(vaersId);
+                    if (vaxData == null) continue;
+
+                    for (int i = 0; i < csv.size(); i++) {
+                        csvPrinter.print(csv.get(i));
+                    }
+                    List<String[]> symptomRows = symptomsMap.get(vaersId);
+                    printJoined(csvPrinter, symptomRows == null ? null : symptomRows.get(symptomRows.size() - 1), symptomHeaders.size());
+                    printJoined(csvPrinter, vaxData, vaxHeaders.size());
+                    csvPrinter.print(otherSymptomRows(symptomRows));
+                    csvPrinter.println();
+                    recordsWritten++;
+                }
+            }
+
+            // None of the COVID vax IDs has a DATA row: reported as a year with no matches, as when
+            // there are no COVID vax rows at all
+            if (recordsWritten == 0) {
+                Files.deleteIfExists(csvWritten);
+                Files.deleteIfExists(csvOutput);
+                Files.deleteIfExists(columnarOutput);
+                line(report, "No matching records found for year: " + year + ". Skipping CSV write.");
+                manifest.record(label, fingerprints, outputs);
+                return report.toString();
+            }
+            if (writeColumnar) {
+                ColumnarFile.convert(csvWritten, columnarOutput);
+            } else {
+                Files.deleteIfExists(columnarOutput);
+            }
+            if (writeCsv) {
+                line(report, "Saved " + recordsWritten + " records to " + outputFile);
+            } else {
+                Files.delete(csvWritten);
+                Files.deleteIfExists(csvOutput);
+            }
+            if (writeColumnar) line(report, "Saved " + recordsWritten + " records to " + columnarOutput);
+            if(year== 2026){
+                line(report, "Processed: Non Domestic");
+
+            } else {
+                line(report, "Processed: " + year);
+            }
+            manifest.record(label, fingerprints, outputs);
+        } finally {
+            memoryBudget.release(memoryKb);
+        }
+        return report.toString();
+    }
+
+    private static void line(StringBuilder report, String message) {
+        report.append(message).append(System.lineSeparator());
+    }
+
+    // Adds the header names other than VAERS_ID to headers and returns the VAERS_ID column
+    private static int headersWithoutId(CsvReader csv, List<String> headers) {
+        for (String header : csv.getHeaderNames()) {
+            if (!header.equalsIgnoreCase("VAERS_ID")) {
+                headers.add(header);
+            }
+        }
+        return csv.requireColumn("VAERS_ID");
+    }
+
+    // The fields of the current record other than the one in column skip
+    private static String[] fieldsWithout(CsvReader csv, int skip) {
+        String[] fields = new String[csv.size() - 1];
+        for (int i = 0, j = 0; i < csv.size(); i++) {
+            if (i != skip) fields[j++] = csv.get(i);
+        }
+        return fields;
+    }
+
+    // The SYMPTOMS rows of a report other than its last, which fills the symptom columns as it
+    // always has, for the OTHER_SYMPTOM_ROWS column: each row's fields in the order of those
+    // columns, every field quoted with "" doubling as in CSV and separated by ',', and the rows
+    // separated by ';'. Empty when the report has one row or none.
+    private static String otherSymptomRows(List<String[]> rows) {
+        if (rows == null || rows.size() < 2) return "";
+        StringBuilder joined = new StringBuilder();
+        for (int row = 0; row < rows.size() - 1; row++) {
+            if (row > 0) joined.append(';');
+            String[] fields = rows.get(row);
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) joined.append(',');
+                joined.append('"').append(fields[i].replace("\"", "\"\"")).append('"');
+            }
+        }
+        return joined.toString();
+    }
+
+    // The non-empty values of the SYMPTOM1 to SYMPTOM5 columns of a VAERS_COVID row, given as
+    // values[from] to values[from + 4]
+    private static List<String> symptomsOf(String[] values, int from) {
+        List<String> symptoms = new ArrayList<>();
+        for (int i = from; i < from + 5; i++) {
+            if (values[i] != null && !values[i].isEmpty()) symptoms.add(values[i]);
+        }
+        return symptoms;
+    }
+
+    private interface RowHandler {
+        void row(String[] values) throws IOException;
+    }
+
+    // Reads the named columns of a Task 1 output from its columnar file if Task 1 wrote one, or
+    // else from the CSV, and hands each row's values, in the order of columns ("" for a column the
+    // file lacks), to handler. The values array is reused from row to row.
+    private static void readOutputColumns(Path csvPath, String[] columns, RowHandler handler) throws IOException {
+        String[] values = new String[columns.length];
+        Path columnarPath = ColumnarFile.pathFor(csvPath);
+        if (Files.exists(columnarPath)) {
+            System.out.println("Reading file: " + columnarPath);
+            try (ColumnarFile file = ColumnarFile.open(columnarPath)) {
+                ColumnarFile.Column[] projected = new ColumnarFile.Column[columns.length];
+                for (int i = 0; i < columns.length; i++) projected[i] = file.column(columns[i]);
+                for (int row = 0; row < file.getRowCount(); row++) {
+                    for (int i = 0; i < columns.length; i++) values[i] = projected[i] == null ? "" : projected[i].get(row);
+                    handler.row(values);
+                }
+            }
+        } else if (Files.exists(csvPath)) {
+            System.out.println("Reading file: " + csvPath);
+            try (CsvReader csv = new CsvReader(csvPath)) {
+                int[] projected = new int[columns.length];
+                for (int i = 0; i < columns.length; i++) projected[i] = csv.column(columns[i]);
+                while (csv.next()) {
+                    for (int i = 0; i < columns.length; i++) {
+                        values[i] = projected[i] >= 0 && projected[i] < csv.size() ? csv.get(projected[i]) : "";
+                    }
+                    handler.row(values);
+                }
+            }
+        }
+    }
+
+    // Prints the fields joined from one of the small files, or a blank for each of its columns
+    // when the report has no row there
+    private static void printJoined(CSVPrinter csvPrinter, String[] fields, int columns) throws IOException {
+        for (int i = 0; i < columns; i++) {
+            csvPrinter.print(fields != null && i < fields.length ? fields[i] : " ");
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         Scanner scanner = new Scanner(System.in);
         System.out.println("Project");
@@ -485,89 +661,540 @@ public class Main {
 
     private static void project2() throws IOException {
         Scanner scanner = new Scanner(System.in);
+
+        // A tree saved by an earlier run can be reopened in milliseconds instead of re-parsing the CSV files
+        Path indexFile = Paths.get(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            System.out.print("Saved index found in " + INDEX_FILE + ". Use it? (yes/no): ");
+            if (scanner.next().trim().equalsIgnoreCase("yes")) {
+                openSavedIndex(indexFile, scanner);
+                return;
+            }
+        }
+
         System.out.print("Enter max degree of B+ Tree: ");
         int degree = scanner.nextInt();
 
-        BPlusTree tree = new BPlusTree(degree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2020.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2021.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2022.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2022.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2023.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2024.csv", tree);
-        loadCSVIntoTree("src/output/VAERS_COVID_2025.csv", tree);
-        System.out.println("All Data loaded into tree.");
-
-        // Extra: load new 2025 updated data
-        System.out.print("Do you want to load updated 2025 entries? (yes/no): ");
-        String response = scanner.next().trim();
-        if (response.equalsIgnoreCase("yes")) {
-            insertNewEntries("src/output/dataToInsert.csv", tree);
-            System.out.println("B+ Tree is now updated with new records.");
-        } else {
-            System.out.println("B+ Tree not updated");
+        // Records are kept off-heap in the store; the tree leaves only reference them
+        try (RecordStore store = new RecordStore()) {
+            BPlusTree tree = new BPlusTree(degree, false, store);
+            String[] files = {
+                    "src/output/VAERS_COVID_2020.csv",
+                    "src/output/VAERS_COVID_2021.csv",
+                    "src/output/VAERS_COVID_2022.csv",
+                    "src/output/VAERS_COVID_2023.csv",
+                    "src/output/VAERS_COVID_2024.csv",
+                    "src/output/VAERS_COVID_2025.csv"
+            };
+            // Filled in the same pass as the tree, so predicates on these columns become index scans
+            List<SecondaryIndex> secondary = secondaryIndexes(degree, store);
+            List<String> header = loadCSVIntoTree(files, tree, store, secondary);
+            int[] columns = indexColumns(secondary, header);
+            System.out.println("All Data loaded into tree.");
+
+            // Inserts logged since the last save are not in the CSV files, so they are applied again
+            try (WriteAheadLog log = WriteAheadLog.open(Paths.get(LOG_FILE), (key, record) -> {
+                if (tree.insertIfAbsent(key, () -> record)) addToIndexes(secondary, columns, key, record);
+            })) {
+                if (log.getReplayed() > 0) System.out.println("Replayed " + log.getReplayed() + " logged inserts from " + LOG_FILE);
+
+                // Extra: load new 2025 updated data
+                System.out.print("Do you want to load updated 2025 entries? (yes/no): ");
+                String response = scanner.next().trim();
+                if (response.equalsIgnoreCase("yes")) {
+                    insertNewEntries("src/output/dataToInsert.csv", tree, null, secondary, log);
+                    System.out.println("B+ Tree is now updated with new records.");
+                } else {
+                    System.out.println("B+ Tree not updated");
+
+                }
+
+                // The saved index now holds everything in the log
+                BPlusTreeFile.write(tree, indexFile);
+                Files.write(Paths.get(INDEX_COLUMNS_FILE), header);
+                log.reset();
+                System.out.println("Index saved to " + INDEX_FILE);
+            }
+
+            long indexStart = System.currentTimeMillis();
+            for (SecondaryIndex index : secondary) {
+                index.build(LOAD_FILL_FACTOR);
+            }
+            System.out.println("Built indexes on VAX_NAME, AGE_YRS and RECVDATE in " + (System.currentTimeMillis() - indexStart) + " ms");
+
+            // A summary is enough to tune the degree; the full dump holds every key of every node
+            System.out.println(tree.stats());
+            System.out.print("Write the full tree structure to tree.txt? (yes/no): ");
+            if (scanner.next().trim().equalsIgnoreCase("yes")) {
+                tree.writeTreeStructureToFile("tree.txt");
+            }
 
+            searchLoop(tree, secondary, scanner);
         }
+    }
 
-        tree.writeTreeStructureToFile("tree.txt");
+    // Reopens the saved tree and replays the log over it, instead of re-parsing the CSV files.
+    // Updates loaded here are only logged and kept in a small in-memory tree on top of the saved
+    // one, so they cost a sequential write; the index is saved again once the log is large.
+    private static void openSavedIndex(Path indexFile, Scanner scanner) throws IOException {
+        long openStart = System.currentTimeMillis();
+        try (SavedIndex savedTree = new SavedIndex(indexFile);
+             RecordStore store = new RecordStore()) {
+            BPlusTree recent = new BPlusTree(savedTree.get().getOrder());
+            try (WriteAheadLog log = WriteAheadLog.open(Paths.get(LOG_FILE), (key, record) -> recent.insertIfAbsent(key, () -> record))) {
+                System.out.println("Opened " + savedTree.get().size() + " records and replayed " + log.getReplayed()
+                        + " logged inserts in " + (System.currentTimeMillis() - openStart) + " ms");
+                // A log left past the threshold (the last run stopped before it checkpointed) is
+                // folded in before the secondary indexes scan the records
+                savedTree.checkpointIfLogFull(recent, log);
+
+                // The secondary indexes aren't saved: they are filled again from a scan of the saved
+                // records and the replayed ones, before the new entries add theirs
+                List<SecondaryIndex> secondary = List.of();
+                Path columnsFile = Paths.get(INDEX_COLUMNS_FILE);
+                if (Files.exists(columnsFile)) {
+                    secondary = secondaryIndexes(savedTree.get().getOrder(), store);
+                    int[] columns = indexColumns(secondary, Files.readAllLines(columnsFile));
+                    Iterator<Map.Entry<Integer, String[]>> entries = new OverlayIndex(savedTree.get(), recent).entries(Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    while (entries.hasNext()) {
+                        Map.Entry<Integer, String[]> entry = entries.next();
+                        addToIndexes(secondary, columns, entry.getKey(), entry.getValue());
+                    }
+                } else {
+                    System.out.println("No column names saved in " + INDEX_COLUMNS_FILE + ": 'where' needs the index rebuilt from the CSV files");
+                }
 
-        while (true) {
-            System.out.print("\nSearch VAERS_ID (or type 'exit'): ");
-            String input = scanner.next().trim();
-            if (input.equalsIgnoreCase("exit")) break;
-            String[] result = tree.search(input);
-            if (result != null) {
-                System.out.println("Record Found:");
-                System.out.println(String.join(" | ", result));
-            } else {
-                System.out.println("Record not found.");
+                System.out.print("Do you want to load updated 2025 entries? (yes/no): ");
+                if (scanner.next().trim().equalsIgnoreCase("yes")) {
+                    insertNewEntries("src/output/dataToInsert.csv", recent, savedTree.get(), secondary, log);
+                    savedTree.checkpointIfLogFull(recent, log);
+                }
+
+                if (!secondary.isEmpty()) {
+                    long indexStart = System.currentTimeMillis();
+                    for (SecondaryIndex index : secondary) {
+                        index.build(LOAD_FILL_FACTOR);
+                    }
+                    System.out.println("Built indexes on VAX_NAME, AGE_YRS and RECVDATE in " + (System.currentTimeMillis() - indexStart) + " ms");
+                }
+
+                // After a checkpoint the recent tree repeats records of the saved one; the overlay
+                // returns each key once
+                searchLoop(new OverlayIndex(savedTree.get(), recent), secondary, scanner);
+                System.out.println(savedTree.get().getBufferPool());
+            }
+        }
+    }
+
+    // The saved index file while openSavedIndex runs. A checkpoint replaces the file; close()
+    // closes whichever one is open then, and every file is closed exactly once, even when a
+    // checkpoint fails part way.
+    private static final class SavedIndex implements Closeable {
+        private final Path path;
+        private BPlusTreeFile file;
+
+        SavedIndex(Path path) throws IOException {
+            this.path = path;
+            this.file = BPlusTreeFile.open(path, INDEX_POOL_BYTES);
+        }
+
+        BPlusTreeFile get() {
+            if (file == null) throw new IllegalStateException("The saved index was closed by a failed checkpoint");
+            return file;
+        }
+
+        // Once log is past CHECKPOINT_LOG_BYTES, writes the saved tree merged with the logged
+        // inserts in recent as the new saved index, empties the log and reopens the index
+        void checkpointIfLogFull(BPlusTree recent, WriteAheadLog log) throws IOException {
+            if (log.size() <= CHECKPOINT_LOG_BYTES) return;
+            long checkpointStart = System.currentTimeMillis();
+            BPlusTreeFile saved = get();
+            file = null;
+            try (RecordStore store = new RecordStore()) {
+                BPlusTree merged = new BPlusTree(saved.getOrder(), false, store);
+                try {
+                    merged.bulkLoad(new OverlayIndex(saved, recent).entries(Integer.MIN_VALUE, Integer.MAX_VALUE), LOAD_FILL_FACTOR);
+                } finally {
+                    saved.close();
+                }
+                BPlusTreeFile.write(merged, path);
+            }
+            log.reset();
+            file = BPlusTreeFile.open(path, INDEX_POOL_BYTES);
+            System.out.println("Index saved to " + path + " in " + (System.currentTimeMillis() - checkpointStart) + " ms");
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file == null) return;
+            BPlusTreeFile open = file;
+            file = null;
+            open.close();
+        }
+    }
+
+    // The indexes behind 'where' queries, empty until rows are added and build() is called
+    private static List<SecondaryIndex> secondaryIndexes(int degree, RecordStore store) {
+        return List.of(
+                new SecondaryIndex("VAX_NAME", SecondaryIndex.Type.TEXT, degree, store),
+                new SecondaryIndex("AGE_YRS", SecondaryIndex.Type.NUMBER, degree, store),
+                new SecondaryIndex("RECVDATE", SecondaryIndex.Type.DATE, degree, store));
+    }
+
+    // Console queries on index. 'serve <port>' also answers them over HTTP (see LookupServer) until
+    // the loop exits.
+    private static void searchLoop(VaersIndex index, List<SecondaryIndex> secondary, Scanner scanner) throws IOException {
+        LookupServer server = null;
+        try {
+            while (true) {
+                System.out.print("\nSearch VAERS_ID (or 'range <from> <to>', 'ids <id,id,...>', "
+                        + "'where <COLUMN> <value | from..to> [and ...]', 'serve <port>', or type 'exit'): ");
+                String input = scanner.next().trim();
+                if (input.equalsIgnoreCase("exit")) break;
+                if (input.equalsIgnoreCase("serve")) {
+                    int port = scanner.nextInt();
+                    if (server != null) {
+                        System.out.println("Already serving on port " + server.getPort());
+                    } else {
+                        server = new LookupServer(index, port);
+                        System.out.println("Serving lookups on http://localhost:" + server.getPort() + "/vaers/<VAERS_ID>");
+                    }
+                    continue;
+                }
+                if (input.equalsIgnoreCase("where")) {
+                    whereQuery(index, secondary, scanner.nextLine().trim());
+                    continue;
+                }
+                if (input.equalsIgnoreCase("ids")) {
+                    int[] ids = Arrays.stream(scanner.next().split(",")).mapToInt(id -> Integer.parseInt(id.trim())).toArray();
+                    String[][] records = index.searchMany(ids);
+                    for (int i = 0; i < ids.length; i++) {
+                        System.out.println(ids[i] + ": " + (records[i] != null ? String.join(" | ", records[i]) : "not found"));
+                    }
+                    continue;
+                }
+                if (input.equalsIgnoreCase("range")) {
+                    int from = scanner.nextInt();
+                    int to = scanner.nextInt();
+                    int found = 0;
+                    for (Iterator<String[]> records = index.range(from, to); records.hasNext(); found++) {
+                        System.out.println(String.join(" | ", records.next()));
+                    }
+                    System.out.println(found + " records in range.");
+                    continue;
+                }
+                String[] result = index.search(input);
+                if (result != null) {
+                    System.out.println("Record Found:");
+                    System.out.println(String.join(" | ", result));
+                } else {
+                    System.out.println("Record not found.");
+                }
+            }
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    // Answers e.g. "where VAX_NAME COVID19 (COVID19 (MODERNA)) and RECVDATE 03/01/2021..03/31/2021"
+    // by intersecting the VAERS_ID lists of the indexes, then fetching only the matching records
+    private static void whereQuery(VaersIndex index, List<SecondaryIndex> secondary, String query) {
+        int[] ids = null;
+        for (String predicate : query.split("(?i)\\s+and\\s+")) {
+            String[] parts = predicate.trim().split("\\s+", 2);
+            SecondaryIndex columnIndex = null;
+            for (SecondaryIndex candidate : secondary) {
+                if (candidate.getColumn().equalsIgnoreCase(parts[0])) columnIndex = candidate;
             }
+            if (columnIndex == null || parts.length < 2) {
+                System.out.println(columnIndex == null ? "No index on " + parts[0] : "Missing value for " + parts[0]);
+                return;
+            }
+            String[] bounds = parts[1].split("\\.\\.", 2);
+            int[] matches;
+            try {
+                matches = bounds.length == 2 ? columnIndex.range(bounds[0], bounds[1]) : columnIndex.lookup(parts[1]);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            ids = ids == null ? matches : SecondaryIndex.intersect(ids, matches);
+        }
+        String[][] records = index.searchMany(ids);
+        int found = 0;
+        for (String[] record : records) {
+            if (record == null) continue;
+            System.out.println(String.join(" | ", record));
+            found++;
+        }
+        System.out.println(found + " matching records.");
+    }
+
+    // The initial load parses the files in parallel, each into a run of rows sorted by VAERS_ID,
+    // then merges the runs straight into a bulk load of the tree. Load time is then close to
+    // parsing the largest file, and none of it goes into one insert (and its splits) per row.
+    // Returns the header of the first file found
+    private static List<String> loadCSVIntoTree(String[] paths, BPlusTree tree, RecordStore store, List<SecondaryIndex> secondary) throws IOException {
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(paths.length, Runtime.getRuntime().availableProcessors())));
+        List<SortedRun> runs = new ArrayList<>();
+        try {
+            List<Future<SortedRun>> parsed = new ArrayList<>();
+            for (int i = 0; i < paths.length; i++) {
+                int order = i;
+                parsed.add(pool.submit(() -> readSortedRun(order, paths[order], store, secondary)));
+            }
+            for (Future<SortedRun> run : parsed) {
+                runs.add(run.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading CSV files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("Could not load CSV files", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+        long parsed = System.currentTimeMillis();
+
+        RunMerger merger = new RunMerger(runs, secondary);
+        tree.bulkLoadStored(merger, LOAD_FILL_FACTOR);
+        System.out.println("Built tree from " + merger.getRows() + " rows in " + (System.currentTimeMillis() - start)
+                + " ms (" + (parsed - start) + " ms parsing)");
+        for (SortedRun run : runs) {
+            if (run.header != null) return run.header;
+        }
+        return List.of();
     }
 
-    private static void loadCSVIntoTree(String path, BPlusTree tree) throws IOException {
+    // Rows of one file sorted by VAERS_ID: record references in the store, and the values of the
+    // indexed columns (null where the file has no such column) for whichever row wins the merge
+    private static final class SortedRun {
+        final int order;  // position in the file list, which settles ties between runs
+        final List<String> header;
+        final int[] keys;
+        final long[] refs;
+        final String[][] indexed;
+        int pos;
+
+        SortedRun(int order, List<String> header, int[] keys, long[] refs, String[][] indexed) {
+            this.order = order;
+            this.header = header;
+            this.keys = keys;
+            this.refs = refs;
+            this.indexed = indexed;
+        }
+    }
+
+    private static SortedRun readSortedRun(int order, String path, RecordStore store, List<SecondaryIndex> secondary) throws IOException {
         File file = new File(path);
-        if (!file.exists()) {
+        Path columnarPath = ColumnarFile.pathFor(file.toPath());
+        if (!file.exists() && !Files.exists(columnarPath)) {
             System.out.println("File not found: " + path);
-            return;
+            return new SortedRun(order, null, new int[0], new long[0], new String[0][]);
         }
-        try (BufferedReader reader = new BufferedReader(new FileReader(file));
-             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-            for (CSVRecord record : parser) {
-                String key = record.get("VAERS_ID").trim();
-                String[] data = new String[record.size()];
-                for (int i = 0; i < record.size(); i++) {
-                    data[i] = record.get(i).trim();
+        RunBuilder rows = new RunBuilder();
+        List<String> header;
+        if (Files.exists(columnarPath)) {
+            path = columnarPath.toString();
+            try (ColumnarFile columnar = ColumnarFile.open(columnarPath)) {
+                header = columnar.getColumnNames();
+                ColumnarFile.Column[] columns = new ColumnarFile.Column[header.size()];
+                for (int i = 0; i < columns.length; i++) columns[i] = columnar.column(i);
+                ColumnarFile.Column idColumn = columnar.column("VAERS_ID");
+                if (idColumn == null) throw new IOException("No VAERS_ID column in " + columnarPath);
+                ColumnarFile.Column[] indexedColumns = new ColumnarFile.Column[secondary.size()];
+                for (int i = 0; i < indexedColumns.length; i++) {
+                    indexedColumns[i] = columnar.column(secondary.get(i).getColumn());
+                }
+                for (int row = 0; row < columnar.getRowCount(); row++) {
+                    String[] values = new String[indexedColumns.length];
+                    for (int i = 0; i < values.length; i++) {
+                        if (indexedColumns[i] != null) values[i] = indexedColumns[i].get(row);
+                    }
+                    String[] fields = new String[columns.length];
+                    for (int i = 0; i < fields.length; i++) fields[i] = columns[i].get(row).trim();
+                    rows.add(idColumn.getInt(row), store.append(fields), values);
+                }
+            }
+        } else {
+            try (CsvReader csv = new CsvReader(file.toPath())) {
+                header = csv.getHeaderNames();
+                int idColumn = csv.requireColumn("VAERS_ID");
+                int[] indexedColumns = new int[secondary.size()];
+                for (int i = 0; i < indexedColumns.length; i++) {
+                    indexedColumns[i] = csv.column(secondary.get(i).getColumn());
+                }
+                while (csv.next()) {
+                    int key = csv.getInt(idColumn);
+                    String[] fields = csv.toArray();
+                    String[] values = new String[indexedColumns.length];
+                    for (int i = 0; i < values.length; i++) {
+                        if (indexedColumns[i] >= 0 && indexedColumns[i] < fields.length) values[i] = fields[indexedColumns[i]];
+                    }
+                    for (int i = 0; i < fields.length; i++) fields[i] = fields[i].trim();
+                    rows.add(key, store.append(fields), values);
                 }
-                tree.insert(Integer.parseInt(key), data);
             }
         }
+
         System.out.println("Loaded: " + path);
+        return rows.sortedRun(order, header);
     }
 
-    private static void insertNewEntries(String newFile, BPlusTree tree) throws IOException {
+    // The rows of one file as they are read, in growable arrays rather than boxed lists: each
+    // row's (VAERS_ID, row) pair packed into a long, its record's offset in the store, and its
+    // values for the secondary indexes
+    private static final class RunBuilder {
+        private long[] packed = new long[1024];
+        private long[] refs = new long[1024];
+        private String[][] indexed = new String[1024][];
+        private int size;
+
+        void add(int key, long ref, String[] values) {
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, size * 2);
+                refs = Arrays.copyOf(refs, size * 2);
+                indexed = Arrays.copyOf(indexed, size * 2);
+            }
+            packed[size] = ((long) key << 32) | size;
+            refs[size] = ref;
+            indexed[size++] = values;
+        }
+
+        // Sorts the packed pairs in place, so equal IDs keep their file order
+        SortedRun sortedRun(int order, List<String> header) {
+            Arrays.sort(packed, 0, size);
+            SortedRun run = new SortedRun(order, header, new int[size], new long[size], new String[size][]);
+            for (int i = 0; i < size; i++) {
+                int row = (int) packed[i];
+                run.keys[i] = (int) (packed[i] >> 32);
+                run.refs[i] = refs[row];
+                run.indexed[i] = indexed[row];
+            }
+            return run;
+        }
+    }
+
+    // K-way merge of the runs in VAERS_ID order. Where a VAERS_ID is in several rows the one from
+    // the earliest file (then the earliest row) is kept, and only that row goes into the indexes.
+    private static final class RunMerger implements Iterator<Map.Entry<Integer, Long>> {
+        private final PriorityQueue<SortedRun> heads = new PriorityQueue<>(
+                Comparator.comparingInt((SortedRun run) -> run.keys[run.pos]).thenComparingInt(run -> run.order));
+        private final List<SecondaryIndex> secondary;
+        private boolean started;
+        private int lastKey;
+        private int rows;
+
+        RunMerger(List<SortedRun> runs, List<SecondaryIndex> secondary) {
+            this.secondary = secondary;
+            for (SortedRun run : runs) {
+                if (run.keys.length > 0) heads.add(run);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!heads.isEmpty() && started && heads.peek().keys[heads.peek().pos] == lastKey) {
+                advance(heads.poll());
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<Integer, Long> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            SortedRun run = heads.poll();
+            int key = run.keys[run.pos];
+            long ref = run.refs[run.pos];
+            String[] values = run.indexed[run.pos];
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) secondary.get(i).add(key, values[i]);
+            }
+            run.indexed[run.pos] = null;
+            advance(run);
+            started = true;
+            lastKey = key;
+            rows++;
+            return Map.entry(key, ref);
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        private void advance(SortedRun run) {
+            if (++run.pos < run.keys.length) heads.add(run);
+        }
+    }
+
+    // The delta file is sorted by VAERS_ID and merged into the tree in one pass. Keys that land in
+    // the same leaf share a descent, and a row's fields are only copied out when its key is new.
+    // Rows already in saved (if given) are skipped. New rows are logged, and the log is synced
+    // once for the whole file before the inserts are reported.
+    private static void insertNewEntries(String newFile, BPlusTree tree, VaersIndex saved, List<SecondaryIndex> secondary,
+                                         WriteAheadLog log) throws IOException {
         File file = new File(newFile);
         if (!file.exists()) {
             System.out.println("Updated 2025 file not found.");
             return;
         }
-        int inserted = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file));
-             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
-            for (CSVRecord record : parser) {
-                String key = record.get("VAERS_ID").trim();
-                int keyInt = Integer.parseInt(key);
-                if (tree.search(keyInt) == false) {  // Only insert if not already present
-                    String[] data = new String[record.size()];
-                    for (int i = 0; i < record.size(); i++) {
-                        data[i] = record.get(i).trim();
-                    }
-                    tree.insert(keyInt, data);
-                    inserted++;
-                }
+        // Rows are kept as their trimmed fields, with (VAERS_ID, row) pairs packed into longs to be
+        // sorted; equal IDs keep their file order
+        List<String[]> records = new ArrayList<>();
+        long[] sorted = new long[1024];
+        int[] columns;
+        try (CsvReader csv = new CsvReader(file.toPath())) {
+            int idColumn = csv.requireColumn("VAERS_ID");
+            columns = indexColumns(secondary, csv.getHeaderNames());
+            while (csv.next()) {
+                if (records.size() == sorted.length) sorted = Arrays.copyOf(sorted, 2 * sorted.length);
+                sorted[records.size()] = ((long) csv.getInt(idColumn) << 32) | records.size();
+                String[] fields = csv.toArray();
+                for (int i = 0; i < fields.length; i++) fields[i] = fields[i].trim();
+                records.add(fields);
             }
         }
-        System.out.println("Inserted " + inserted + " new records from updated file.");
+        Arrays.sort(sorted, 0, records.size());
+        int count = 0;
+        for (int i = 0; i < records.size(); i++) {
+            long entry = sorted[i];
+            if (saved == null || !saved.search((int) (entry >> 32))) sorted[count++] = entry;
+        }
+        int[] keys = new int[count];
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (int) (sorted[i] >> 32);
+            rows[i] = (int) sorted[i];
+        }
+
+        long[] lastLogged = {0};
+        int inserted = tree.insertAllIfAbsent(keys, i -> {
+            String[] record = records.get(rows[i]);
+            addToIndexes(secondary, columns, keys[i], record);
+            lastLogged[0] = log.append(keys[i], record);
+            return record;
+        });
+        long syncStart = System.currentTimeMillis();
+        log.sync(lastLogged[0]);
+        System.out.println("Inserted " + inserted + " new records from updated file (logged in "
+                + (System.currentTimeMillis() - syncStart) + " ms).");
+    }
+
+    // Position in header of each secondary index's column, -1 where header lacks it, looked up
+    // once per file rather than per row
+    private static int[] indexColumns(List<SecondaryIndex> secondary, List<String> header) {
+        int[] columns = new int[secondary.size()];
+        for (int i = 0; i < columns.length; i++) columns[i] = header.indexOf(secondary.get(i).getColumn());
+        return columns;
+    }
+
+    // Adds a record's fields to the secondary indexes, at the positions from indexColumns
+    private static void addToIndexes(List<SecondaryIndex> secondary, int[] columns, int vaersId, String[] fields) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] >= 0 && columns[i] < fields.length) secondary.get(i).add(vaersId, fields[columns[i]]);
+        }
     }
 
 
@@ -602,46 +1229,40 @@ public class Main {
                 String inputPath = (String) fileInfo[0];
                 Character quoteChar = (Character) fileInfo[1];
                 long startTime = System.currentTimeMillis();  // Per-file timer start
-                int recordCount = 0;
-
-                try (Reader reader = new FileReader(inputPath);
-                     CSVParser parser = CSVFormat.DEFAULT
-                             .withFirstRecordAsHeader()
-                             .withIgnoreSurroundingSpaces()
-                             .withQuote(quoteChar)
-                             .parse(reader)) {
-
-                    for (CSVRecord record : parser) {
-                        String vaersId = record.get("VAERS_ID");
-                        String vaxManu = record.get("VAX_MANU");
-                        String recvDate = record.get("RECVDATE");
-                        String ageYrs = record.get("AGE_YRS");
-                        String sex = record.get("SEX");
-                        String died = record.get("DIED");
-                        String dateDied = record.get("DATEDIED");
-                        String vaxDate = record.get("VAX_DATE");
-
-                        List<String> symptoms = new ArrayList<>();
-                        for (int i = 1; i <= 5; i++) {
-                            String symptom = record.get("SYMPTOM" + i);
-                            if (symptom != null && !symptom.trim().isEmpty() && symptom.length() > 3) {
-                                symptoms.add(symptom.trim());
-                            }
-                        }
-
-                        int noOfSymptoms = symptoms.size();
-                        while (symptoms.size() < 5) symptoms.add("");
+                int[] recordCount = {0};
+
+                // Only the 13 columns used here are read from a columnar file. It was converted by a
+                // quote-aware reader, so a file read here with another quote (NonDomestic) is
+                // always read as CSV, as it always was
+                if (Character.valueOf('"').equals(quoteChar) && Files.exists(ColumnarFile.pathFor(Paths.get(inputPath)))) {
+                    readOutputColumns(Paths.get(inputPath), TRANSACTION_COLUMNS, values -> {
+                        printTransaction(printer, values);
+                        recordCount[0]++;
+                    });
+                    double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+                    System.out.printf("Processed %d records from %s in %.2f seconds.%n", recordCount[0], inputPath, seconds);
+                    continue;
+                }
 
-                        printer.printRecord(vaersId, vaxManu, recvDate, ageYrs, sex, died, dateDied, vaxDate,
-                                noOfSymptoms,
-                                symptoms.get(0), symptoms.get(1), symptoms.get(2), symptoms.get(3), symptoms.get(4));
+                try (CsvReader csv = new CsvReader(Paths.get(inputPath), Charset.defaultCharset(), quoteChar, true)) {
+                    // The symptom columns may be missing; the others are required
+                    int[] columns = new int[TRANSACTION_COLUMNS.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        columns[i] = i < 8 ? csv.requireColumn(TRANSACTION_COLUMNS[i]) : csv.column(TRANSACTION_COLUMNS[i]);
+                    }
 
-                        recordCount++;
+                    while (csv.next()) {
+                        String[] values = new String[TRANSACTION_COLUMNS.length];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = columns[i] >= 0 ? csv.get(columns[i]) : "";
+                        }
+                        printTransaction(printer, values);
+                        recordCount[0]++;
                     }
 
                     long endTime = System.currentTimeMillis();  // Per-file timer end
                     double seconds = (endTime - startTime) / 1000.0;
-                    System.out.printf("Processed %d records from %s in %.2f seconds.%n", recordCount, inputPath, seconds);
+                    System.out.printf("Processed %d records from %s in %.2f seconds.%n", recordCount[0], inputPath, seconds);
 
                 } catch (IOException e) {
                     System.err.println("Error reading " + inputPath);
@@ -656,24 +1277,48 @@ public class Main {
         }
     }
 
+    // The columns of a VAERS_COVID row that processMultipleCSVTransactions reads, symptoms last
+    private static final String[] TRANSACTION_COLUMNS = {"VAERS_ID", "VAX_MANU", "RECVDATE", "AGE_YRS", "SEX", "DIED",
+            "DATEDIED", "VAX_DATE", "SYMPTOM1", "SYMPTOM2", "SYMPTOM3", "SYMPTOM4", "SYMPTOM5"};
+
+    // Writes one transaction row from the values of TRANSACTION_COLUMNS, trimmed, so a field Task 1
+    // wrote as " " (a report with no SYMPTOMS or VAX row) is empty whichever file it was read
+    // from: the first five symptoms longer than three characters, and their count
+    private static void printTransaction(CSVPrinter printer, String[] values) throws IOException {
+        for (int i = 0; i < 8; i++) values[i] = values[i].trim();
+        List<String> symptoms = new ArrayList<>();
+        for (String symptom : symptomsOf(values, 8)) {
+            if (!symptom.trim().isEmpty() && symptom.length() > 3 && symptoms.size() < 5) {
+                symptoms.add(symptom.trim());
+            }
+        }
+
+        int noOfSymptoms = symptoms.size();
+        while (symptoms.size() < 5) symptoms.add("");
+
+        printer.printRecord(values[0], values[1], values[2], values[3], values[4], values[5], values[6], values[7],
+                noOfSymptoms,
+                symptoms.get(0), symptoms.get(1), symptoms.get(2), symptoms.get(3), symptoms.get(4));
+    }
+
     private static void apriori(String csvPath) throws IOException {
-        // 1. Load CSV data using Apache Commons CSV
-        Reader in = new FileReader(csvPath);
-        Iterable<CSVRecord> records = CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .parse(in);
+        // 1. Load CSV data
         List<Set<String>> transactions = new ArrayList<>();
-        for (CSVRecord record : records) {
-            // Collect non-empty symptom fields into a transaction set
-            Set<String> transaction = new HashSet<>();
-            for (int i = 1; i <= 5; i++) {
-                String symptom = record.get("symptom_" + i);
-                if (symptom != null && !symptom.isEmpty()) {
-                    transaction.add(symptom.trim());
+        try (CsvReader csv = new CsvReader(Paths.get(csvPath))) {
+            int[] symptomColumns = new int[5];
+            for (int i = 0; i < symptomColumns.length; i++) symptomColumns[i] = csv.requireColumn("symptom_" + (i + 1));
+            while (csv.next()) {
+                // Collect non-empty symptom fields into a transaction set
+                Set<String> transaction = new HashSet<>();
+                for (int column : symptomColumns) {
+                    String symptom = csv.get(column);
+                    if (!symptom.isEmpty()) {
+                        transaction.add(symptom.trim());
+                    }
+                }
+                if (!transaction.isEmpty()) {
+                    transactions.add(transaction);
                 }
-            }
-            if (!transaction.isEmpty()) {
-                transactions.add(transaction);
             }
         }
         System.out.println("Loaded " + transactions.size() + " transactions.");
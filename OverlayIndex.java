@@ -0,0 +1,54 @@
+package org.example;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// A saved, read-only tree with the inserts made since it was saved (replayed from the
+// WriteAheadLog) held in a small in-memory tree on top. A key is looked up in the recent tree
+// first; ranges merge the two in key order.
+class OverlayIndex implements VaersIndex {
+    private final VaersIndex base;
+    private final BPlusTree recent;
+
+    public OverlayIndex(VaersIndex base, BPlusTree recent) {
+        this.base = base;
+        this.recent = recent;
+    }
+
+    @Override
+    public String[] search(String keyStr) {
+        String[] record = recent.search(keyStr);
+        return record != null ? record : base.search(keyStr);
+    }
+
+    @Override
+    public boolean search(int key) {
+        return recent.search(key) || base.search(key);
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, String[]>> entries(int lo, int hi) {
+        Iterator<Map.Entry<Integer, String[]>> older = base.entries(lo, hi);
+        Iterator<Map.Entry<Integer, String[]>> newer = recent.entries(lo, hi);
+        return new Iterator<>() {
+            private Map.Entry<Integer, String[]> nextOlder = older.hasNext() ? older.next() : null;
+            private Map.Entry<Integer, String[]> nextNewer = newer.hasNext() ? newer.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextOlder != null || nextNewer != null;
+            }
+
+            @Override
+            public Map.Entry<Integer, String[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int cmp = nextOlder == null ? 1 : nextNewer == null ? -1 : Integer.compare(nextOlder.getKey(), nextNewer.getKey());
+                Map.Entry<Integer, String[]> entry = cmp < 0 ? nextOlder : nextNewer;
+                if (cmp <= 0) nextOlder = older.hasNext() ? older.next() : null;
+                if (cmp >= 0) nextNewer = newer.hasNext() ? newer.next() : null;
+                return entry;
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Append-only arena that keeps records as encoded bytes in memory-mapped chunks of a scratch
+// file, outside the Java heap. A tree leaf then holds one long per record instead of a String[]
+// with a String per column, and columns are only decoded when a record is read back.
+//
+// A reference is the chunk number in the high 32 bits and the offset in the chunk in the low 32.
+// Record: field count (varint), then per field its UTF-8 length (varint) and bytes
+//
+// Appends only hold the lock to claim their bytes; encoding and copying happen outside it, so
+// threads parsing different files can append at the same time.
+class RecordStore implements Closeable {
+    private static final int CHUNK_SIZE = 256 << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private int writeOffset = CHUNK_SIZE;  // forces a chunk to be mapped by the first append
+    private long bytesUsed;
+
+    public RecordStore() throws IOException {
+        this.file = Files.createTempFile("vaers-records", ".bin");
+        this.file.toFile().deleteOnExit();
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public long append(String[] record) {
+        byte[][] fields = new byte[record.length][];
+        int size = varintSize(record.length);
+        for (int i = 0; i < record.length; i++) {
+            fields[i] = record[i].getBytes(StandardCharsets.UTF_8);
+            size += varintSize(fields[i].length) + fields[i].length;
+        }
+        long ref = reserve(size);
+        MappedByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int pos = putVarint(chunk, (int) ref, record.length);
+        for (byte[] field : fields) {
+            pos = putVarint(chunk, pos, field.length);
+            chunk.put(pos, field);
+            pos += field.length;
+        }
+        return ref;
+    }
+
+    // Ascending ints, kept as the count, the first value and the gaps between neighbours, so a
+    // posting list of nearby VAERS_IDs takes a byte or two per ID. Read back with getSortedInts.
+    public long appendSortedInts(int[] values) {
+        int size = varintSize(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0 && values[i] < values[i - 1]) throw new IllegalArgumentException("Values must be sorted: " + values[i] + " after " + values[i - 1]);
+            size += varintSize(i == 0 ? values[0] : values[i] - values[i - 1]);
+        }
+        long ref = reserve(size);
+        MappedByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int pos = putVarint(chunk, (int) ref, values.length);
+        for (int i = 0; i < values.length; i++) {
+            pos = putVarint(chunk, pos, i == 0 ? values[0] : values[i] - values[i - 1]);
+        }
+        return ref;
+    }
+
+    public String[] get(long ref) {
+        MappedByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int pos = (int) ref;
+        int fieldCount = getVarint(chunk, pos);
+        pos += varintSize(fieldCount);
+        String[] record = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            int length = getVarint(chunk, pos);
+            pos += varintSize(length);
+            record[i] = decode(chunk, pos, length);
+            pos += length;
+        }
+        return record;
+    }
+
+    public int[] getSortedInts(long ref) {
+        MappedByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int pos = (int) ref;
+        int count = getVarint(chunk, pos);
+        pos += varintSize(count);
+        int[] values = new int[count];
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int gap = getVarint(chunk, pos);
+            pos += varintSize(gap);
+            value += gap;
+            values[i] = value;
+        }
+        return values;
+    }
+
+    // Decodes a single column, skipping over the ones before it
+    public String getField(long ref, int column) {
+        MappedByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int pos = (int) ref;
+        int fieldCount = getVarint(chunk, pos);
+        pos += varintSize(fieldCount);
+        if (column < 0 || column >= fieldCount) throw new IndexOutOfBoundsException("Column " + column + " of " + fieldCount);
+        for (int i = 0; ; i++) {
+            int length = getVarint(chunk, pos);
+            pos += varintSize(length);
+            if (i == column) return decode(chunk, pos, length);
+            pos += length;
+        }
+    }
+
+    public synchronized long bytesUsed() {
+        return bytesUsed;
+    }
+
+    @Override
+    // Drops the mappings and deletes the scratch file. Windows refuses to delete a file while it
+    // is still mapped, and a mapping is only released once the GC collects it, so a file that can't
+    // be deleted yet is left to the deleteOnExit registered when it was created.
+    public void close() throws IOException {
+        chunks = new MappedByteBuffer[0];
+        channel.close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still mapped; deleted on exit
+        }
+    }
+
+    // Claims size bytes for one entry, in a new chunk if the current one is too full, and returns its reference
+    private synchronized long reserve(int size) {
+        if (size > CHUNK_SIZE) throw new IllegalArgumentException("Record too large: " + size + " bytes");
+        if (writeOffset + size > CHUNK_SIZE) addChunk();
+        long ref = ((long) (chunks.length - 1) << 32) | writeOffset;
+        writeOffset += size;
+        bytesUsed += size;
+        return ref;
+    }
+
+    private void addChunk() {
+        try {
+            MappedByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.length * CHUNK_SIZE, CHUNK_SIZE);
+            chunks = grown;
+            writeOffset = 0;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow record store " + file, e);
+        }
+    }
+
+    private static String decode(MappedByteBuffer chunk, int pos, int length) {
+        if (length == 0) return "";
+        byte[] bytes = new byte[length];
+        chunk.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int putVarint(MappedByteBuffer chunk, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            chunk.put(pos++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        chunk.put(pos++, (byte) value);
+        return pos;
+    }
+
+    private static int getVarint(MappedByteBuffer chunk, int pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = chunk.get(pos++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,157 @@
+package org.example;
+
+import java.util.*;
+
+// Index on one column of the VAERS_COVID rows, answering "which VAERS_IDs have this value" without
+// a pass over the CSV files. It is a B+ tree from the column value, encoded as an int key, to the
+// sorted VAERS_IDs of the rows holding it; the posting lists are delta-encoded in a RecordStore,
+// so each leaf entry is one reference per distinct value.
+//
+// Keys keep the order of the values, so a range of values is a range scan of the tree:
+//   TEXT    rank of the value among the distinct values, in String order (VAX_NAME)
+//   NUMBER  value * 100, rounded (AGE_YRS, which has fractions for infants)
+//   DATE    yyyymmdd from MM/dd/yyyy (RECVDATE)
+// Values that are blank or don't parse are left out of the index.
+class SecondaryIndex {
+    enum Type { TEXT, NUMBER, DATE }
+
+    private final String column;
+    private final Type type;
+    private final BPlusTree tree;
+    private final RecordStore store;
+
+    // Rows seen by add(), grouped by value until build() writes them out
+    private Map<Object, IdList> pending = new HashMap<>();
+    private String[] dictionary;  // distinct TEXT values in key order, set by build()
+
+    public SecondaryIndex(String column, Type type, int order, RecordStore store) {
+        this.column = column;
+        this.type = type;
+        this.store = store;
+        this.tree = new BPlusTree(order, false, store);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    // Records that row vaersId holds value; called once per row during the load pass
+    public void add(int vaersId, String value) {
+        if (pending == null) throw new IllegalStateException("Index on " + column + " is already built");
+        value = value.trim();
+        Object key = type == Type.TEXT ? value : encode(value);
+        if (value.isEmpty() || key == null) return;
+        pending.computeIfAbsent(key, k -> new IdList()).add(vaersId);
+    }
+
+    // Sorts each posting list, stores it and bulk loads the tree. A VAERS_ID that was added twice
+    // for the same value (a file loaded twice) is kept once.
+    public void build(double fillFactor) {
+        if (pending == null) throw new IllegalStateException("Index on " + column + " is already built");
+        Map<Integer, IdList> byKey = new HashMap<>();
+        if (type == Type.TEXT) {
+            dictionary = pending.keySet().toArray(new String[0]);
+            Arrays.sort(dictionary);
+            for (int code = 0; code < dictionary.length; code++) byKey.put(code, pending.get(dictionary[code]));
+        } else {
+            for (Map.Entry<Object, IdList> entry : pending.entrySet()) byKey.put((Integer) entry.getKey(), entry.getValue());
+        }
+        pending = null;
+
+        List<Map.Entry<Integer, Long>> refs = new ArrayList<>(byKey.size());
+        for (Map.Entry<Integer, IdList> entry : byKey.entrySet()) {
+            refs.add(Map.entry(entry.getKey(), store.appendSortedInts(entry.getValue().sortedDistinct())));
+        }
+        refs.sort(Map.Entry.comparingByKey());
+        tree.bulkLoadStored(refs.iterator(), fillFactor);
+    }
+
+    // Sorted VAERS_IDs of the rows whose value equals value
+    public int[] lookup(String value) {
+        return range(value, value);
+    }
+
+    // Sorted VAERS_IDs of the rows whose value is between from and to, both inclusive
+    public int[] range(String from, String to) {
+        if (pending != null) throw new IllegalStateException("Index on " + column + " is not built yet");
+        int lo, hi;
+        if (type == Type.TEXT) {
+            lo = Arrays.binarySearch(dictionary, from.trim());
+            if (lo < 0) lo = -(lo + 1);
+            hi = Arrays.binarySearch(dictionary, to.trim());
+            if (hi < 0) hi = -(hi + 1) - 1;
+        } else {
+            Integer loKey = encode(from.trim());
+            Integer hiKey = encode(to.trim());
+            if (loKey == null || hiKey == null) throw new IllegalArgumentException("Not a valid " + column + " value: " + (loKey == null ? from : to));
+            lo = loKey;
+            hi = hiKey;
+        }
+        if (lo > hi) return new int[0];
+
+        // Each row has one value, so the posting lists are disjoint and only need sorting once joined
+        long[] refs = tree.refsInRange(lo, hi);
+        if (refs.length == 1) return store.getSortedInts(refs[0]);
+        IdList ids = new IdList();
+        for (long ref : refs) {
+            for (int id : store.getSortedInts(ref)) ids.add(id);
+        }
+        return ids.sortedDistinct();
+    }
+
+    // VAERS_IDs in both sorted lists, for answering a conjunction of predicates on several indexes
+    public static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private Integer encode(String value) {
+        try {
+            if (type == Type.NUMBER) {
+                return (int) Math.round(Double.parseDouble(value) * 100);
+            }
+            String[] parts = value.split("/");
+            if (parts.length != 3) return null;
+            int month = Integer.parseInt(parts[0]);
+            int day = Integer.parseInt(parts[1]);
+            int year = Integer.parseInt(parts[2]);
+            if (month < 1 || month > 12 || day < 1 || day > 31) return null;
+            return year * 10000 + month * 100 + day;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Growable int[] for the VAERS_IDs of one value
+    private static final class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        int[] sortedDistinct() {
+            int[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[count++] = sorted[i];
+            }
+            return Arrays.copyOf(sorted, count);
+        }
+    }
+}
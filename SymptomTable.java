@@ -0,0 +1,155 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// The Task 2/3 dataset: one row per (report, symptom), stored by column as int codes into a
+// dictionary per column, so a value repeated across rows (a SEX, a VAX_NAME, a date) is one
+// String however many rows hold it. A report's up to five rows share one code for each of its
+// own values, and its free text is kept once.
+//
+// Columns are either hashed, where any repeat anywhere shares an entry (the low-cardinality
+// columns), or per report, where only a repeat of the previous row's value does (VAERS_ID,
+// SYMPTOM_TEXT): those have about one distinct value per report, and a hash map of them would
+// cost more than it saves.
+//
+// sortKeys(column) renumbers a column's dictionary in String.compareTo order, after which codes
+// compare the way their Strings do, so sorting and grouping compare ints.
+class SymptomTable {
+    private final String[] names;
+    private final Column[] columns;
+    private int size;
+
+    public SymptomTable(String[] names, boolean[] perReport) {
+        this.names = names.clone();
+        this.columns = new Column[names.length];
+        for (int i = 0; i < names.length; i++) columns[i] = new Column(!perReport[i]);
+    }
+
+    // Appends a row with one value per column
+    public void add(String... values) {
+        if (values.length != columns.length) throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        for (int i = 0; i < columns.length; i++) columns[i].add(size, values[i]);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public String get(int row, int column) {
+        Column c = columns[column];
+        return c.entries.get(c.codes[row]);
+    }
+
+    public String[] row(int row) {
+        String[] values = new String[columns.length];
+        for (int i = 0; i < values.length; i++) values[i] = get(row, i);
+        return values;
+    }
+
+    // The codes of column by row, numbered so that comparing two codes gives the sign
+    // String.compareTo gives for their values, and equal values have equal codes. Valid until the
+    // next add() or mapColumn().
+    public int[] sortKeys(int column) {
+        Column c = columns[column];
+        c.order(size);
+        return c.codes;
+    }
+
+    // Number of distinct values of column, which sortKeys(column) numbers from 0
+    public int distinct(int column) {
+        Column c = columns[column];
+        c.order(size);
+        return c.entries.size();
+    }
+
+    // The value that code stands for in column
+    public String value(int column, int code) {
+        return columns[column].entries.get(code);
+    }
+
+    // For each code of column, whether its value passes test; each distinct value is tested once
+    public boolean[] matching(int column, Predicate<String> test) {
+        List<String> entries = columns[column].entries;
+        boolean[] matches = new boolean[entries.size()];
+        for (int i = 0; i < matches.length; i++) matches[i] = test.test(entries.get(i));
+        return matches;
+    }
+
+    // Replaces the values of column with mapping applied to them, e.g. ages with age groups,
+    // calling mapping once per distinct value rather than once per row
+    public void mapColumn(int column, String name, Function<String, String> mapping) {
+        Column c = columns[column];
+        Column mapped = new Column(true);
+        int[] recode = new int[c.entries.size()];
+        for (int i = 0; i < recode.length; i++) recode[i] = mapped.intern(mapping.apply(c.entries.get(i)));
+        mapped.codes = new int[Math.max(16, size)];
+        for (int row = 0; row < size; row++) mapped.codes[row] = recode[c.codes[row]];
+        columns[column] = mapped;
+        names[column] = name;
+    }
+
+    private static final class Column {
+        private final List<String> entries = new ArrayList<>();
+        private Map<String, Integer> index;  // null for a per report column
+        private int[] codes = new int[16];
+        private boolean ordered = true;
+
+        Column(boolean hashed) {
+            if (hashed) index = new HashMap<>();
+        }
+
+        void add(int row, String value) {
+            if (row == codes.length) codes = Arrays.copyOf(codes, 2 * row);
+            if (index == null && row > 0 && entries.get(codes[row - 1]).equals(value)) {
+                codes[row] = codes[row - 1];
+            } else {
+                codes[row] = intern(value);
+            }
+        }
+
+        int intern(String value) {
+            Integer code = index == null ? null : index.get(value);
+            if (code == null) {
+                code = entries.size();
+                if (ordered && code > 0 && entries.get(code - 1).compareTo(value) >= 0) ordered = false;
+                entries.add(value);
+                if (index != null) index.put(value, code);
+            }
+            return code;
+        }
+
+        // Sorts the dictionary, merging equal values, and renumbers the codes of rows 0..size-1 to match
+        void order(int size) {
+            if (ordered) return;
+            Integer[] byValue = new Integer[entries.size()];
+            for (int i = 0; i < byValue.length; i++) byValue[i] = i;
+            Arrays.sort(byValue, (a, b) -> entries.get(a).compareTo(entries.get(b)));
+            int[] recode = new int[byValue.length];
+            List<String> sorted = new ArrayList<>();
+            for (int i = 0; i < byValue.length; i++) {
+                String value = entries.get(byValue[i]);
+                if (sorted.isEmpty() || !sorted.get(sorted.size() - 1).equals(value)) sorted.add(value);
+                recode[byValue[i]] = sorted.size() - 1;
+            }
+            for (int row = 0; row < size; row++) codes[row] = recode[codes[row]];
+            entries.clear();
+            entries.addAll(sorted);
+            if (index != null) {
+                index.clear();
+                for (int i = 0; i < entries.size(); i++) index.put(entries.get(i), i);
+            }
+            ordered = true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.example;
+
+// Snapshot of a BPlusTree's shape and activity, from BPlusTree.stats(). The shape comes from one
+// walk over the nodes (not the records), so it is cheap enough to take after every load; the
+// counters are kept by the tree as it runs.
+class TreeStats {
+    private final int order;
+    private final int[] nodesPerLevel;
+    private final int[] leafFillHistogram;
+    private final long keys;
+    private final long nodeBytes;
+    private final long storeBytes;
+    private final long leafSplits;
+    private final long internalSplits;
+    private final long merges;
+    private final long lookups;
+
+    TreeStats(int order, int[] nodesPerLevel, int[] leafFillHistogram, long keys, long nodeBytes, long storeBytes,
+              long leafSplits, long internalSplits, long merges, long lookups) {
+        this.order = order;
+        this.nodesPerLevel = nodesPerLevel;
+        this.leafFillHistogram = leafFillHistogram;
+        this.keys = keys;
+        this.nodeBytes = nodeBytes;
+        this.storeBytes = storeBytes;
+        this.leafSplits = leafSplits;
+        this.internalSplits = internalSplits;
+        this.merges = merges;
+        this.lookups = lookups;
+    }
+
+    public int getHeight() {
+        return nodesPerLevel.length;
+    }
+
+    // Node count of each level, root first; the last entry is the number of leaves
+    public int[] getNodesPerLevel() {
+        return nodesPerLevel.clone();
+    }
+
+    // Leaves by fill: bucket i counts the leaves holding [10 * i, 10 * (i + 1)) percent of order - 1
+    // keys, and the last bucket also takes the full ones
+    public int[] getLeafFillHistogram() {
+        return leafFillHistogram.clone();
+    }
+
+    public long getKeys() {
+        return keys;
+    }
+
+    // Keys per leaf over the leaf capacity, 0 to 1
+    public double getAverageLeafFill() {
+        int leaves = nodesPerLevel[nodesPerLevel.length - 1];
+        return (double) keys / ((long) leaves * (order - 1));
+    }
+
+    // Estimated heap held by the nodes, from their array sizes. Records kept in the leaves as
+    // String[] are not included; records in a RecordStore are in getStoreBytes().
+    public long getNodeBytes() {
+        return nodeBytes;
+    }
+
+    public long getStoreBytes() {
+        return storeBytes;
+    }
+
+    public long getLeafSplits() {
+        return leafSplits;
+    }
+
+    public long getInternalSplits() {
+        return internalSplits;
+    }
+
+    public long getMerges() {
+        return merges;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Order ").append(order).append(", height ").append(getHeight()).append(", ").append(keys).append(" keys\n");
+        sb.append("Nodes per level:");
+        for (int count : nodesPerLevel) sb.append(' ').append(count);
+        sb.append(String.format("%nAverage leaf fill: %.1f%%%nLeaf fill:", 100 * getAverageLeafFill()));
+        for (int i = 0; i < leafFillHistogram.length; i++) {
+            sb.append(String.format(" %d-%d%%: %d", 10 * i, 10 * (i + 1), leafFillHistogram[i]));
+        }
+        sb.append(String.format("%nNode heap (estimated): %.1f MB", nodeBytes / (1024.0 * 1024.0)));
+        if (storeBytes > 0) sb.append(String.format(", record store: %.1f MB", storeBytes / (1024.0 * 1024.0)));
+        sb.append("\nSplits: ").append(leafSplits).append(" leaf, ").append(internalSplits).append(" internal; merges: ")
+                .append(merges).append("; lookups: ").append(lookups);
+        return sb.toString();
+    }
+}
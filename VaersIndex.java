@@ -0,0 +1,50 @@
+package org.example;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lookups by VAERS_ID, shared by the in-memory tree and the tree reopened from disk
+interface VaersIndex {
+    String[] search(String keyStr);
+
+    boolean search(int key);
+
+    // Records for each of keys, in the same order (null where a key is not found)
+    default String[][] searchMany(int[] keys) {
+        String[][] results = new String[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            results[i] = search(String.valueOf(keys[i]));
+        }
+        return results;
+    }
+
+    // VAERS_IDs with lo <= VAERS_ID <= hi and their records, in key order. The iterator descends
+    // once and then walks the leaf chain, so memory use does not depend on the size of the range.
+    Iterator<Map.Entry<Integer, String[]>> entries(int lo, int hi);
+
+    // Records of entries(lo, hi)
+    default Iterator<String[]> range(int lo, int hi) {
+        Iterator<Map.Entry<Integer, String[]>> entries = entries(lo, hi);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public String[] next() {
+                return entries.next().getValue();
+            }
+        };
+    }
+
+    default Stream<String[]> rangeStream(int lo, int hi) {
+        Spliterator<String[]> spliterator = Spliterators.spliteratorUnknownSize(range(lo, hi),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+}
@@ -0,0 +1,166 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// Append-only log of the inserts made since the tree image was last saved, so they survive a
+// restart without re-applying the CSV they came from. Opening the log replays it; a checkpoint
+// (saving the image, then reset()) empties it, so replay never covers more than one checkpoint.
+//
+// Record: payload length (int), CRC32 of the payload (int), then the payload: VAERS_ID (int),
+// field count (int), and per field its UTF-8 length (int) and bytes. A record that is cut short
+// or fails its checksum marks the end of the log: it was being written when the process stopped.
+//
+// Group commit: append() only buffers a record and returns its sequence number. sync(seq) writes
+// out everything buffered so far with one force, so a batch of records, or records from several
+// threads, share one disk flush.
+class WriteAheadLog implements Closeable {
+    private final FileChannel channel;
+    private final Object syncLock = new Object();  // one writer of the file at a time
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);  // appended but not yet written
+    private long appended;  // sequence number of the last record appended
+    private volatile long durable;  // sequence number of the last record forced to disk
+    private final int replayed;
+
+    private WriteAheadLog(FileChannel channel, int replayed) {
+        this.channel = channel;
+        this.replayed = replayed;
+    }
+
+    // Opens the log at path, creating it if needed, and passes every record in it to replay in
+    // the order they were appended. A torn record at the end is cut off.
+    public static WriteAheadLog open(Path path, BiConsumer<Integer, String[]> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = 0;
+            int records = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 20));
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 8 || length > channel.size() - end - 8) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) break;
+
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                int key = record.getInt();
+                String[] fields = new String[record.getInt()];
+                for (int i = 0; i < fields.length; i++) {
+                    byte[] bytes = new byte[record.getInt()];
+                    record.get(bytes);
+                    fields[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                replay.accept(key, fields);
+                end += 8 + payload.length;
+                records++;
+            }
+            if (end < channel.size()) channel.truncate(end);
+            channel.position(end);
+            return new WriteAheadLog(channel, records);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Number of records replayed by open()
+    public int getReplayed() {
+        return replayed;
+    }
+
+    // Buffers an insert of record under key and returns its sequence number for sync()
+    public synchronized long append(int key, String[] record) {
+        byte[][] fields = new byte[record.length][];
+        int length = 8;
+        for (int i = 0; i < record.length; i++) {
+            fields[i] = record[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + fields[i].length;
+        }
+        if (pending.remaining() < 8 + length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + 8 + length));
+            pending.flip();
+            pending = grown.put(pending);
+        }
+        int start = pending.position();
+        pending.putInt(length).putInt(0).putInt(key).putInt(record.length);
+        for (byte[] field : fields) {
+            pending.putInt(field.length).put(field);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start + 8, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        return ++appended;
+    }
+
+    // Returns once the record with sequence number seq, and everything appended before it, is on
+    // disk. A thread that finds its record already flushed by another thread's sync returns at once.
+    public void sync(long seq) throws IOException {
+        if (durable >= seq) return;
+        synchronized (syncLock) {
+            if (durable >= seq) return;
+            ByteBuffer batch;
+            long last;
+            synchronized (this) {
+                batch = pending;
+                last = appended;
+                pending = ByteBuffer.allocate(batch.capacity());
+            }
+            batch.flip();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+            durable = last;
+        }
+    }
+
+    // Bytes in the log, including records not synced yet; used to decide when to checkpoint
+    public synchronized long size() throws IOException {
+        return channel.size() + pending.position();
+    }
+
+    // Empties the log once a checkpoint holds everything in it. Records appended after the
+    // checkpoint was taken would be lost, so the caller must not append in between.
+    public void reset() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                pending.clear();
+                durable = appended;
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    // Syncs whatever is still buffered, so no appended record is lost by closing, then closes the file
+    @Override
+    public void close() throws IOException {
+        try {
+            long last;
+            synchronized (this) {
+                last = appended;
+            }
+            sync(last);
+        } finally {
+            channel.close();
+        }
+    }
+}